@@ -0,0 +1,350 @@
+package isse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Micro benchmark for all {@link Solver} implementations on the bundled puzzles
+ *
+ * Works like a small JMH: every (solver, puzzle) pair gets warmup iterations
+ * and measured iterations of fixed length, optionally each in a fresh JVM.
+ * Reported are throughput, average latency, allocated bytes per solve and
+ * garbage collections during measurement
+ *
+ * Usage: SolverBenchmark [-wi n] [-i n] [-t millis] [-f forks] [-csv]
+ *        [-s solver,solver] [-p file.sdk,file.sdk]
+ *
+ * Defaults are all solvers on data/*.sdk and Pack1/{Easy,Medium,Hard}01..10,
+ * run from the project directory
+ *
+ */
+public class SolverBenchmark {
+
+	private static final Map<String, SolverFactory> SOLVERS = new LinkedHashMap<String, SolverFactory>();
+
+	static {
+		SOLVERS.put("backtrack", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new BacktrackSolver(stats);
+			}
+		});
+		SOLVERS.put("constraint", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new ConstraintSolver(stats);
+			}
+		});
+		SOLVERS.put("constraint-singles", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				ConstraintSolver solver = new ConstraintSolver(stats);
+				solver.setPropagationRules(EnumSet.range(PropagationRule.HIDDEN_SINGLE_ROW,
+						PropagationRule.HIDDEN_SINGLE_BOX));
+				return solver;
+			}
+		});
+		SOLVERS.put("constraint-wdeg", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				ConstraintSolver solver = new ConstraintSolver(stats);
+				solver.setVariableSelector(new WeightedDegreeSelector());
+				return solver;
+			}
+		});
+		SOLVERS.put("constraint-restarts", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				ConstraintSolver solver = new ConstraintSolver(stats);
+				solver.setVariableSelector(new WeightedDegreeSelector(new Random(42)));
+				solver.setRestartPolicy(RestartPolicy.luby(100));
+				return solver;
+			}
+		});
+		SOLVERS.put("constraint-cached", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				// every iteration after the first is a cache hit
+				return new CachingSolver(new ConstraintSolver(stats), 1024);
+			}
+		});
+		SOLVERS.put("dlx", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new DancingLinksSolver(stats);
+			}
+		});
+		SOLVERS.put("sat", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new SatSolver(stats);
+			}
+		});
+		SOLVERS.put("portfolio", new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new PortfolioSolver(stats, Arrays.asList(SOLVERS.get("constraint"), SOLVERS.get("dlx")));
+			}
+		});
+	}
+
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+	private int forks = 0;
+	private boolean csv = false;
+	private List<String> solvers = new ArrayList<String>(SOLVERS.keySet());
+	private List<String> puzzles = defaultPuzzles();
+	// keeps the JIT from dropping solve calls whose result is unused
+	private long sink;
+
+	public static void main(String[] args) throws Exception {
+		SolverBenchmark bench = new SolverBenchmark();
+		boolean child = false;
+		for (int k = 0; k < args.length; ++k) {
+			String arg = args[k];
+			if (arg.equals("-wi"))
+				bench.warmupIterations = Integer.parseInt(args[++k]);
+			else if (arg.equals("-i"))
+				bench.iterations = Integer.parseInt(args[++k]);
+			else if (arg.equals("-t"))
+				bench.iterationMillis = Long.parseLong(args[++k]);
+			else if (arg.equals("-f"))
+				bench.forks = Integer.parseInt(args[++k]);
+			else if (arg.equals("-csv"))
+				bench.csv = true;
+			else if (arg.equals("-s"))
+				bench.solvers = Arrays.asList(args[++k].split(","));
+			else if (arg.equals("-p"))
+				bench.puzzles = Arrays.asList(args[++k].split(","));
+			else if (arg.equals("--child"))
+				child = true;
+			else
+				throw new IllegalArgumentException("Unknown option " + arg);
+		}
+		if (child) {
+			// measure in this JVM and report machine-readable
+			for (String solver : bench.solvers)
+				for (String puzzle : bench.puzzles)
+					System.out.println("RESULT," + bench.measure(solver, puzzle).toCsv());
+			return;
+		}
+		bench.runAll();
+	}
+
+	private static List<String> defaultPuzzles() {
+		List<String> files = new ArrayList<String>();
+		files.add("data/Easy04.sdk");
+		files.add("data/Medium07.sdk");
+		files.add("data/Hard08.sdk");
+		for (String level : new String[] { "Easy", "Medium", "Hard" }) {
+			for (int i = 1; i <= 10; ++i) {
+				files.add(String.format("Pack1/%s%02d.sdk", level, i));
+			}
+		}
+		return files;
+	}
+
+	private void runAll() throws Exception {
+		if (csv)
+			System.out.println(Result.CSV_HEADER);
+		else
+			System.out.println(String.format(Locale.ROOT, "%-18s %-20s %12s %14s %12s %14s %6s", "solver",
+					"puzzle", "ops/s", "avg us/op", "+- us", "bytes/op", "gcs"));
+		for (String solver : solvers) {
+			if (!SOLVERS.containsKey(solver))
+				throw new IllegalArgumentException("Unknown solver " + solver + ", known: " + SOLVERS.keySet());
+			for (String puzzle : puzzles) {
+				Result result = forks > 0 ? measureForked(solver, puzzle) : measure(solver, puzzle);
+				System.out.println(csv ? result.toCsv() : result.toString());
+			}
+		}
+	}
+
+	Result measure(String solverName, String puzzleFile) throws Exception {
+		Sudoku puzzle = new SudokuReader().readFromFile(new File(puzzleFile));
+		Solver solver = SOLVERS.get(solverName).createSolver(new StatisticsObject());
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore;
+		long allocated;
+		long gcCountBefore;
+		long gcTimeBefore;
+		long ops = 0;
+		long nanos = 0;
+		double[] nanosPerOp = new double[iterations];
+		try {
+			for (int k = 0; k < warmupIterations; ++k) {
+				iterate(solver, puzzle);
+			}
+
+			allocatedBefore = allocatedBytes(threads);
+			gcCountBefore = gcCount();
+			gcTimeBefore = gcMillis();
+			for (int k = 0; k < iterations; ++k) {
+				long[] iteration = iterate(solver, puzzle);
+				ops += iteration[0];
+				nanos += iteration[1];
+				nanosPerOp[k] = iteration[1] / (double) iteration[0];
+			}
+			allocated = allocatedBytes(threads) - allocatedBefore;
+		} finally {
+			if (solver instanceof PortfolioSolver)
+				((PortfolioSolver) solver).shutdown();
+		}
+
+		Result result = new Result(solverName, puzzleFile);
+		result.opsPerSecond = ops / (nanos / 1e9);
+		result.avgNanos = nanos / (double) ops;
+		result.errorNanos = stddev(nanosPerOp, result.avgNanos);
+		result.bytesPerOp = allocatedBefore < 0 ? -1 : allocated / (double) ops;
+		result.gcCount = gcCount() - gcCountBefore;
+		result.gcMillis = gcMillis() - gcTimeBefore;
+		return result;
+	}
+
+	/**
+	 * Solves the puzzle over and over for one iteration, at least once
+	 * @return number of solves and nanos spent
+	 */
+	private long[] iterate(Solver solver, Sudoku puzzle) {
+		long deadline = System.nanoTime() + iterationMillis * 1000000L;
+		long start = System.nanoTime();
+		long ops = 0;
+		long now;
+		do {
+			Sudoku solution = solver.solve(puzzle);
+			sink += solution == null ? 0 : solution.get(0, 0);
+			++ops;
+			now = System.nanoTime();
+		} while (now < deadline);
+		return new long[] { ops, now - start };
+	}
+
+	/**
+	 * Runs the measurement in fresh JVMs and averages them
+	 */
+	private Result measureForked(String solverName, String puzzleFile) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Result> results = new ArrayList<Result>();
+		for (int f = 0; f < forks; ++f) {
+			ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					SolverBenchmark.class.getName(), "--child", "-wi", "" + warmupIterations, "-i", "" + iterations,
+					"-t", "" + iterationMillis, "-s", solverName, "-p", puzzleFile);
+			pb.redirectErrorStream(true);
+			Process process = pb.start();
+			BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String line;
+			while ((line = out.readLine()) != null) {
+				if (line.startsWith("RESULT,"))
+					results.add(Result.fromCsv(line.substring("RESULT,".length())));
+			}
+			if (process.waitFor() != 0)
+				throw new IllegalStateException("Forked benchmark failed for " + solverName + " on " + puzzleFile);
+		}
+		Result mean = new Result(solverName, puzzleFile);
+		double[] avgs = new double[results.size()];
+		for (int k = 0; k < results.size(); ++k) {
+			Result r = results.get(k);
+			mean.opsPerSecond += r.opsPerSecond / results.size();
+			mean.avgNanos += r.avgNanos / results.size();
+			mean.bytesPerOp += r.bytesPerOp / results.size();
+			mean.gcCount += r.gcCount;
+			mean.gcMillis += r.gcMillis;
+			avgs[k] = r.avgNanos;
+		}
+		mean.errorNanos = stddev(avgs, mean.avgNanos);
+		return mean;
+	}
+
+	private static double stddev(double[] values, double mean) {
+		if (values.length < 2)
+			return 0;
+		double sum = 0;
+		for (double v : values)
+			sum += (v - mean) * (v - mean);
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	/**
+	 * Sums over all live threads, so solvers working on pools of their own,
+	 * like the portfolio or parallel searches, are counted as well; threads
+	 * that end during the measurement take their bytes with them
+	 * @return bytes allocated by the live threads so far, -1 if the JVM cannot tell
+	 */
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		long total = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			// -1 for threads that ended in the meantime
+			total += Math.max(0, bytes);
+		}
+		return total;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(0, gc.getCollectionTime());
+		return millis;
+	}
+
+	static class Result {
+		static final String CSV_HEADER = "solver,puzzle,opsPerSecond,avgNanos,errorNanos,bytesPerOp,gcCount,gcMillis";
+		final String solver;
+		final String puzzle;
+		double opsPerSecond;
+		double avgNanos;
+		double errorNanos;
+		double bytesPerOp;
+		long gcCount;
+		long gcMillis;
+
+		Result(String solver, String puzzle) {
+			this.solver = solver;
+			this.puzzle = puzzle;
+		}
+
+		String toCsv() {
+			return String.format(Locale.ROOT, "%s,%s,%.3f,%.1f,%.1f,%.1f,%d,%d", solver, puzzle, opsPerSecond,
+					avgNanos, errorNanos, bytesPerOp, gcCount, gcMillis);
+		}
+
+		static Result fromCsv(String line) {
+			String[] fields = line.split(",");
+			Result r = new Result(fields[0], fields[1]);
+			r.opsPerSecond = Double.parseDouble(fields[2]);
+			r.avgNanos = Double.parseDouble(fields[3]);
+			r.errorNanos = Double.parseDouble(fields[4]);
+			r.bytesPerOp = Double.parseDouble(fields[5]);
+			r.gcCount = Long.parseLong(fields[6]);
+			r.gcMillis = Long.parseLong(fields[7]);
+			return r;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-18s %-20s %12.1f %14.1f %12.1f %14.0f %6d", solver, puzzle,
+					opsPerSecond, avgNanos / 1000, errorNanos / 1000, bytesPerOp, gcCount);
+		}
+	}
+}
@@ -1,24 +1,40 @@
 package isse;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
-import isse.VariableToCoordinates.Pair;
+import isse.StatisticsObject.Phase;
 
-public class BacktrackSolver implements Solver {
+public class BacktrackSolver implements Solver, SolutionCounter {
 	
-	protected final int size = 9;
-	protected final int nVars = size*size;
+	// of the board at hand
+	protected int size;
+	protected int cellSize;
+	protected int nVars;
 	protected StatisticsObject stats;
 	
-	/* 
-	 * Uses a very simple encoding; 81 variables such
+	// bit (v-1) is set iff value v is used in the row / column / sub-field
+	private long[] rowUsed = new long[0];
+	private long[] colUsed = new long[0];
+	private long[] boxUsed = new long[0];
+
+	// a node is too cheap to read the clock at each one, so the token is
+	// polled every CHECK_INTERVAL nodes
+	private static final int CHECK_INTERVAL = 1024;
+	private CancellationToken token = CancellationToken.NONE;
+	private int untilCheck;
+	private boolean cancelled;
+
+	/*
+	 * Uses a very simple encoding; size*size variables such
 	 * that grid[i][j] is represented by 
-	 * variable x_{i*size + j}; each having domain 0..9
+	 * variable x_{i*size + j}; each having domain 1..size
 	 * 
 	 * constraints are the diverse row constraints; col constraints
 	 * and sub-fields
 	 * 
+	 * instead of re-checking the whole board after each put, the values
+	 * used per row, column and sub-field are kept as bitmasks so that only
+	 * the three constraints of the changed cell are looked at
 	 */
 	
 	public BacktrackSolver(StatisticsObject stats) {
@@ -27,46 +43,190 @@ public class BacktrackSolver implements Solver {
 
 	@Override
 	public Sudoku solve(Sudoku input) {
+		return trySolve(input, CancellationToken.NONE);
+	}
+
+	@Override
+	public SolveResult solve(Sudoku input, CancellationToken token) {
+		StatisticsSnapshot before = stats.snapshot();
+		Sudoku solution = trySolve(input, token);
+		return SolveResult.of(solution, cancelled, stats.snapshot().since(before));
+	}
+
+	/**
+	 * @return the solution, null if there is none or token was cancelled
+	 */
+	private Sudoku trySolve(Sudoku input, CancellationToken token) {
+		this.token = token;
+		untilCheck = 1;
+		cancelled = false;
 		stats.tickRuntime();
+		long start = System.nanoTime();
 		Sudoku assignment = new Sudoku(input);
-		List<Integer> unassignedVariables = new ArrayList<Integer>(size*size);
-		for(int i = 0; i < size; ++i) {
-			for(int j = 0; j < size; ++j) {
-				if(input.isUnassigned(i,j)) {
-					unassignedVariables.add(VariableToCoordinates.toIndex(new Pair(i,j), size));
-				}
-			}
+		int[] unassignedVariables = setUp(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+		if(unassignedVariables != null) {
+			assignment = solveRec(input, assignment, unassignedVariables, 0);
+		} else { // the givens already violate a constraint
+			assignment = null;
 		}
-		assignment = solveRec(input, assignment, unassignedVariables, 0);
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
 		stats.tockRuntime();
 		return assignment;
 	}
 
-	private Sudoku solveRec(Sudoku input, Sudoku assignment, List<Integer> unassignedVariables, int variableIndex) {
+	@Override
+	public int countSolutions(Sudoku input, int limit) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		Sudoku assignment = new Sudoku(input);
+		int[] unassignedVariables = setUp(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+		int count = unassignedVariables != null && limit > 0 ? countRec(assignment, unassignedVariables, 0, limit) : 0;
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
+		stats.tockRuntime();
+		return count;
+	}
+
+	/**
+	 * Like solveRec, but goes on after a solution until limit are found
+	 * @return the number of solutions below this node, at most limit
+	 */
+	private int countRec(Sudoku assignment, int[] unassignedVariables, int variableIndex, int limit) {
 		stats.markRecursiveCall();
-		if(variableIndex == unassignedVariables.size()) { // done here 
+		stats.markDepth(variableIndex);
+		if(variableIndex == unassignedVariables.length) {
+			return 1;
+		}
+
+		int variable = unassignedVariables[variableIndex];
+		int i = variable / size;
+		int j = variable % size;
+		int box = (i / cellSize) * cellSize + j / cellSize;
+		long used = rowUsed[i] | colUsed[j] | boxUsed[box];
+		int count = 0;
+
+		for(int domainValue = 1; domainValue <= size && count < limit; ++domainValue) {
+			long bit = 1L << (domainValue - 1);
+			if((used & bit) == 0) {
+				assignment.put(variable, domainValue);
+				rowUsed[i] |= bit;
+				colUsed[j] |= bit;
+				boxUsed[box] |= bit;
+
+				count += countRec(assignment, unassignedVariables, variableIndex+1, limit - count);
+
+				assignment.putEmpty(variable);
+				rowUsed[i] &= ~bit;
+				colUsed[j] &= ~bit;
+				boxUsed[box] &= ~bit;
+				stats.markBacktrack();
+			}
+		}
+		return count;
+	}
+
+	private Sudoku solveRec(Sudoku input, Sudoku assignment, int[] unassignedVariables, int variableIndex) {
+		if(--untilCheck == 0) {
+			untilCheck = CHECK_INTERVAL;
+			cancelled = token.isCancelled();
+		}
+		if(cancelled)
+			return null;
+		stats.markRecursiveCall();
+		stats.markDepth(variableIndex);
+		if(variableIndex == unassignedVariables.length) { // done here 
 			return assignment;
 		}
-		
-		Pair p = VariableToCoordinates.toPair(unassignedVariables.get(variableIndex), size);
-		
-		for(int domainValue = 1; domainValue <= 9; ++domainValue) {
-			assignment.put(p.i, p.j, domainValue);
-			if(assignment.isValid()) {
+
+		int variable = unassignedVariables[variableIndex];
+		int i = variable / size;
+		int j = variable % size;
+		int box = (i / cellSize) * cellSize + j / cellSize;
+		long used = rowUsed[i] | colUsed[j] | boxUsed[box];
+
+		for(int domainValue = 1; domainValue <= size; ++domainValue) {
+			long bit = 1L << (domainValue - 1);
+			if((used & bit) == 0) {
+				assignment.put(variable, domainValue);
+				rowUsed[i] |= bit;
+				colUsed[j] |= bit;
+				boxUsed[box] |= bit;
 
 				Sudoku result = solveRec(input, assignment, unassignedVariables, variableIndex+1);
 				if(result != null)
 					return result;
 				else { // undo last assignment
-					assignment.putEmpty(p.i, p.j);
+					assignment.putEmpty(variable);
+					rowUsed[i] &= ~bit;
+					colUsed[j] &= ~bit;
+					boxUsed[box] &= ~bit;
+					stats.markBacktrack();
 				}
 			}
-			assignment.putEmpty(p.i, p.j);
 		}
 		return null;
 		
 	}
 
+	/**
+	 * Records the givens of input
+	 * @return the indices of the unassigned variables, null if the givens
+	 *         already violate a constraint
+	 */
+	private int[] setUp(Sudoku input) {
+		clearUsed(input.getSize());
+		int[] unassignedVariables = new int[nVars];
+		int nUnassigned = 0;
+		boolean consistent = true;
+		for(int variable = 0; variable < nVars; ++variable) {
+			if(input.isUnassigned(variable)) {
+				unassignedVariables[nUnassigned++] = variable;
+			} else {
+				consistent &= markUsed(variable / size, variable % size, input.get(variable));
+			}
+		}
+		return consistent ? Arrays.copyOf(unassignedVariables, nUnassigned) : null;
+	}
+
+	/**
+	 * Prepares the masks for a board of the given size
+	 */
+	private void clearUsed(int size) {
+		if(size != this.size) {
+			this.size = size;
+			cellSize = (int) Math.round(Math.sqrt(size));
+			nVars = size*size;
+			rowUsed = new long[size];
+			colUsed = new long[size];
+			boxUsed = new long[size];
+		}
+		for(int k = 0; k < size; ++k) {
+			rowUsed[k] = 0;
+			colUsed[k] = 0;
+			boxUsed[k] = 0;
+		}
+	}
+
+	/**
+	 * Records the value of a given
+	 * @return false if the value is out of range or already used in one of the cell's constraints
+	 */
+	private boolean markUsed(int i, int j, int value) {
+		if(value < 1 || value > size)
+			return false;
+		long bit = 1L << (value - 1);
+		int box = (i / cellSize) * cellSize + j / cellSize;
+		if(((rowUsed[i] | colUsed[j] | boxUsed[box]) & bit) != 0)
+			return false;
+		rowUsed[i] |= bit;
+		colUsed[j] |= bit;
+		boxUsed[box] |= bit;
+		return true;
+	}
+
 	@Override
 	public StatisticsObject getStats() {
 		return this.stats;
@@ -0,0 +1,16 @@
+package isse;
+
+/**
+ * Receives the results of a {@link BatchSolver} run; calls are never concurrent
+ *
+ */
+public interface BatchListener {
+
+	/**
+	 * @param index position of the puzzle in the input, starting at 0
+	 * @param puzzle
+	 * @param solution null if the puzzle has no solution
+	 */
+	public abstract void solved(int index, Sudoku puzzle, Sudoku solution);
+
+}
@@ -0,0 +1,69 @@
+package isse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link BatchSolver} run: how many puzzles, how fast, and the
+ * statistics of every worker
+ *
+ */
+public class BatchReport {
+	private final int puzzles;
+	private final int solved;
+	private final long elapsedNanos;
+	private final List<StatisticsObject> workerStats;
+
+	public BatchReport(int puzzles, int solved, long elapsedNanos, List<StatisticsObject> workerStats) {
+		this.puzzles = puzzles;
+		this.solved = solved;
+		this.elapsedNanos = elapsedNanos;
+		this.workerStats = Collections.unmodifiableList(workerStats);
+	}
+
+	public int getPuzzles() {
+		return puzzles;
+	}
+
+	public int getSolved() {
+		return solved;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public double getPuzzlesPerSecond() {
+		if (elapsedNanos == 0)
+			return 0;
+		return puzzles / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+
+	public List<StatisticsObject> getWorkerStats() {
+		return workerStats;
+	}
+
+	/**
+	 * @return the counters of all workers added up
+	 */
+	public StatisticsObject getTotalStats() {
+		StatisticsObject total = new StatisticsObject();
+		for (StatisticsObject stats : workerStats) {
+			total.merge(stats);
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("+-+-+-+-+-+-+ BATCH +-+-+-+-+-+-+-+\n");
+		sb.append(" + puzzles : " + puzzles + " (" + solved + " solved)\n");
+		sb.append(" + workers : " + workerStats.size() + "\n");
+		sb.append(" + elapsed time in ms: " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "\n");
+		sb.append(String.format(" + puzzles/sec : %.1f%n", getPuzzlesPerSecond()));
+		sb.append("------------------------------------\n");
+		sb.append(getTotalStats().toString());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,216 @@
+package isse;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves many puzzles on a fixed number of worker threads; every worker
+ * owns one solver and one stats object for the whole run and pulls the
+ * next puzzle as soon as it is done with the last one
+ *
+ * The threads only live during a run, so there is nothing to shut down
+ *
+ */
+public class BatchSolver {
+	private final SolverFactory factory;
+	private final int threads;
+
+	public BatchSolver(SolverFactory factory, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Need at least one thread, got " + threads);
+		this.factory = factory;
+		this.threads = threads;
+	}
+
+	/**
+	 * Solves all .sdk files of a directory in the order of their names
+	 * @see #solveAll(Iterator, boolean, BatchListener)
+	 */
+	public BatchReport solveDirectory(File directory, boolean inOrder, BatchListener listener)
+			throws FileNotFoundException, InterruptedException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".sdk");
+			}
+		});
+		if (files == null) {
+			throw new FileNotFoundException(directory + " is not a directory");
+		}
+		Arrays.sort(files);
+		final Iterator<File> fileIterator = Arrays.asList(files).iterator();
+		final SudokuReader reader = new SudokuReader();
+		return solveAll(new Iterator<Sudoku>() {
+			@Override
+			public boolean hasNext() {
+				return fileIterator.hasNext();
+			}
+
+			@Override
+			public Sudoku next() {
+				File f = fileIterator.next();
+				try {
+					return reader.readFromFile(f);
+				} catch (FileNotFoundException e) {
+					throw new IllegalStateException("Could not read " + f, e);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}, inOrder, listener);
+	}
+
+	/**
+	 * Solves every puzzle the iterator delivers; the iterator is only
+	 * advanced by one worker at a time, so it may read lazily
+	 * @param puzzles
+	 * @param inOrder if true, results reach the listener in input order,
+	 *        otherwise as soon as they are available
+	 * @param listener may be null
+	 * @return throughput and statistics of the run
+	 */
+	public BatchReport solveAll(Iterator<Sudoku> puzzles, boolean inOrder, BatchListener listener)
+			throws InterruptedException {
+		final Source source = new Source(puzzles);
+		final Sink sink = new Sink(inOrder, listener);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> workers = new ArrayList<Future<Integer>>(threads);
+		List<StatisticsObject> workerStats = new ArrayList<StatisticsObject>(threads);
+
+		long start = System.nanoTime();
+		for (int w = 0; w < threads; ++w) {
+			final StatisticsObject stats = new StatisticsObject();
+			final Solver solver = factory.createSolver(stats);
+			workerStats.add(stats);
+			workers.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int solved = 0;
+					Job job;
+					while ((job = source.next()) != null) {
+						Sudoku solution = solver.solve(job.puzzle);
+						if (solution != null)
+							++solved;
+						sink.deliver(job.index, job.puzzle, solution);
+					}
+					return solved;
+				}
+			}));
+		}
+
+		int solved = 0;
+		try {
+			for (Future<Integer> worker : workers) {
+				solved += worker.get();
+			}
+		} catch (ExecutionException e) {
+			source.close();
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			source.close();
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+		return new BatchReport(source.count(), solved, elapsed, workerStats);
+	}
+
+	private static class Job {
+		final int index;
+		final Sudoku puzzle;
+
+		Job(int index, Sudoku puzzle) {
+			this.index = index;
+			this.puzzle = puzzle;
+		}
+	}
+
+	/**
+	 * Hands out puzzles together with their index
+	 */
+	private static class Source {
+		private final Iterator<Sudoku> puzzles;
+		private int nextIndex = 0;
+		private boolean closed = false;
+
+		Source(Iterator<Sudoku> puzzles) {
+			this.puzzles = puzzles;
+		}
+
+		/**
+		 * @return the next puzzle or null if there are no more
+		 */
+		synchronized Job next() {
+			if (closed || !puzzles.hasNext())
+				return null;
+			Sudoku puzzle;
+			try {
+				puzzle = puzzles.next();
+			} catch (NoSuchElementException e) {
+				return null;
+			}
+			return new Job(nextIndex++, puzzle);
+		}
+
+		synchronized void close() {
+			closed = true;
+		}
+
+		synchronized int count() {
+			return nextIndex;
+		}
+	}
+
+	/**
+	 * Passes results on to the listener, holding back early results if the
+	 * input order has to be kept
+	 */
+	private static class Sink {
+		private final boolean inOrder;
+		private final BatchListener listener;
+		private final Map<Integer, Sudoku[]> pending = new HashMap<Integer, Sudoku[]>();
+		private int nextIndex = 0;
+
+		Sink(boolean inOrder, BatchListener listener) {
+			this.inOrder = inOrder;
+			this.listener = listener;
+		}
+
+		synchronized void deliver(int index, Sudoku puzzle, Sudoku solution) {
+			if (listener == null)
+				return;
+			if (!inOrder) {
+				listener.solved(index, puzzle, solution);
+				return;
+			}
+			pending.put(index, new Sudoku[] { puzzle, solution });
+			Sudoku[] next;
+			while ((next = pending.remove(nextIndex)) != null) {
+				listener.solved(nextIndex, next[0], next[1]);
+				++nextIndex;
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package isse;
+
+/**
+ * The units (rows, columns, sub-fields) of a board size as index tables;
+ * cell (i, j) has index i*size + j, units are numbered rows first, then
+ * columns, then sub-fields
+ *
+ * Layouts are immutable and shared; the tables for all supported sizes are
+ * small, so they are built up front and {@link #of(int)} is a lookup
+ *
+ */
+final class BoardLayout {
+	// indexed by cellSize
+	private static final BoardLayout[] LAYOUTS = new BoardLayout[(int) Math.sqrt(Sudoku.MAX_SIZE) + 1];
+
+	static {
+		for (int cellSize = 1; cellSize < LAYOUTS.length; ++cellSize) {
+			LAYOUTS[cellSize] = new BoardLayout(cellSize);
+		}
+	}
+
+	final int size;
+	final int cellSize;
+	final int nCells;
+	final int nUnits;
+	/** cells of every unit */
+	final int[][] unitCells;
+	/** the row, column and sub-field unit of every cell */
+	final int[][] cellUnits;
+
+	private BoardLayout(int cellSize) {
+		this.cellSize = cellSize;
+		size = cellSize * cellSize;
+		nCells = size * size;
+		nUnits = 3 * size;
+		unitCells = new int[nUnits][size];
+		cellUnits = new int[nCells][3];
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				int cell = i * size + j;
+				int box = boxOf(i, j);
+				unitCells[i][j] = cell;
+				unitCells[size + j][i] = cell;
+				unitCells[2 * size + box][(i % cellSize) * cellSize + j % cellSize] = cell;
+				cellUnits[cell][0] = i;
+				cellUnits[cell][1] = size + j;
+				cellUnits[cell][2] = 2 * size + box;
+			}
+		}
+	}
+
+	/**
+	 * @param size a square number up to {@link Sudoku#MAX_SIZE}
+	 */
+	static BoardLayout of(int size) {
+		int cellSize = (int) Math.round(Math.sqrt(size));
+		if (cellSize < 1 || cellSize * cellSize != size || size > Sudoku.MAX_SIZE)
+			throw new IllegalArgumentException("Unsupported board size " + size);
+		return LAYOUTS[cellSize];
+	}
+
+	/**
+	 * @return the number of the sub-field of cell (i, j), from 0 to size-1
+	 */
+	int boxOf(int i, int j) {
+		return (i / cellSize) * cellSize + j / cellSize;
+	}
+
+	/**
+	 * @return the mask with one bit for each of the values 1 to size
+	 */
+	long fullDomain() {
+		return size == 64 ? -1L : (1L << size) - 1;
+	}
+}
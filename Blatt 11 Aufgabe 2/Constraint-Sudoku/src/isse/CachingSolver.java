@@ -0,0 +1,74 @@
+package isse;
+
+/**
+ * Looks puzzles up in a {@link SolutionCache} before handing them to
+ * another solver; relabelings, transpositions and line permutations of a
+ * puzzle solved before are answered from the cache
+ *
+ * The wrapped solver is not thread-safe, so every thread needs its own
+ * caching solver, but they may share the cache
+ *
+ */
+public class CachingSolver implements Solver {
+	private final Solver solver;
+	private final SolutionCache cache;
+
+	public CachingSolver(Solver solver, int capacity) {
+		this(solver, new SolutionCache(capacity));
+	}
+
+	public CachingSolver(Solver solver, SolutionCache cache) {
+		this.solver = solver;
+		this.cache = cache;
+	}
+
+	@Override
+	public StatisticsObject getStats() {
+		return solver.getStats();
+	}
+
+	public SolutionCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public Sudoku solve(Sudoku input) {
+		StatisticsObject stats = solver.getStats();
+		stats.tickRuntime();
+		CanonicalForm form = CanonicalForm.of(input);
+		String cached = cache.get(form.key);
+		if (cached != null) {
+			stats.tockRuntime();
+			return cached.isEmpty() ? null : form.fromCanonical(cached, input);
+		}
+		Sudoku solution = solver.solve(input);
+		remember(form, solution);
+		return solution;
+	}
+
+	/**
+	 * Cache hits count as solves in the statistics of the wrapped solver, as
+	 * with {@link #solve(Sudoku)}, but their result comes with empty
+	 * counters; timed out solves are not cached
+	 */
+	@Override
+	public SolveResult solve(Sudoku input, CancellationToken token) {
+		StatisticsObject stats = solver.getStats();
+		stats.tickRuntime();
+		CanonicalForm form = CanonicalForm.of(input);
+		String cached = cache.get(form.key);
+		if (cached != null) {
+			stats.tockRuntime();
+			Sudoku solution = cached.isEmpty() ? null : form.fromCanonical(cached, input);
+			return SolveResult.of(solution, false, new StatisticsObject().snapshot());
+		}
+		SolveResult result = solver.solve(input, token);
+		if (result.getStatus() != SolveResult.Status.TIMED_OUT)
+			remember(form, result.getSolution());
+		return result;
+	}
+
+	private void remember(CanonicalForm form, Sudoku solution) {
+		cache.put(form.key, solution == null ? SolutionCache.UNSOLVABLE : form.toCanonical(solution));
+	}
+}
@@ -0,0 +1,72 @@
+package isse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells a running solve to give up, either when {@link #cancel()} is called
+ * from any thread or once a deadline has passed
+ *
+ * Solvers poll {@link #isCancelled()} at their own interval: the constraint,
+ * dancing links and SAT solvers at every branching point or conflict, the
+ * {@link BacktrackSolver} only every 1024 nodes. Solvers keeping the
+ * default {@link Solver#solve(Sudoku, CancellationToken)} only check once
+ * before they start
+ *
+ */
+public class CancellationToken {
+	/** never cancelled, for solves without a limit */
+	public static final CancellationToken NONE = new CancellationToken(null, Long.MAX_VALUE, false) {
+		@Override
+		public void cancel() {
+			throw new UnsupportedOperationException("NONE cannot be cancelled");
+		}
+	};
+
+	private final CancellationToken parent;
+	// in System.nanoTime(), only meaningful if hasDeadline
+	private final long deadline;
+	private final boolean hasDeadline;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * A token without deadline, cancelled by {@link #cancel()} only
+	 */
+	public CancellationToken() {
+		this(null, 0, false);
+	}
+
+	private CancellationToken(CancellationToken parent, long deadline, boolean hasDeadline) {
+		this.parent = parent;
+		this.deadline = deadline;
+		this.hasDeadline = hasDeadline;
+	}
+
+	/**
+	 * @return a token that cancels itself after timeout, counted from now
+	 */
+	public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+		return new CancellationToken(null, System.nanoTime() + unit.toNanos(timeout), true);
+	}
+
+	/**
+	 * @return a token that is cancelled together with this one, but can
+	 *         also be cancelled on its own
+	 */
+	public CancellationToken child() {
+		return new CancellationToken(this, 0, false);
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		if (cancelled)
+			return true;
+		if ((hasDeadline && System.nanoTime() - deadline >= 0) || (parent != null && parent.isCancelled())) {
+			cancelled = true;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,363 @@
+package isse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A puzzle moved into a canonical position under the symmetries of the board:
+ * transposition, permuting bands, rows within a band, stacks and columns
+ * within a stack, and relabeling the values. Puzzles that are such variants
+ * of each other mostly end up with the same {@link #key}, and a solution
+ * translated to the canonical position solves all of them
+ *
+ * Trying the whole group (3.3 billion elements for 9x9) is far too slow, so
+ * rows and columns are first ordered by invariants: their number of givens,
+ * refined with the invariants of the crossing lines and how often each value
+ * is given. Only lines with equal invariants are permuted, and of those
+ * candidates the lexicographically smallest board wins, with values
+ * renumbered in order of their first appearance and empty cells as 0
+ *
+ * The key is always the puzzle itself in the chosen position, so a cache hit
+ * is correct even when the tie breaking gives up after
+ * {@link #MAX_CANDIDATES}; two variants then merely get different keys
+ *
+ */
+final class CanonicalForm {
+	// orderings compared at most, beyond that ties stay in input order
+	static final int MAX_CANDIDATES = 1 << 10;
+	private static final int REFINEMENTS = 2;
+
+	/** the canonical puzzle, one char per cell with 0 for empty cells */
+	final String key;
+	private final int size;
+	private final boolean transposed;
+	// canonical row / column to row / column of the (transposed) input
+	private final int[] rowOrder;
+	private final int[] colOrder;
+	// input value to canonical value and back
+	private final int[] label;
+	private final int[] value;
+
+	private CanonicalForm(String key, int size, boolean transposed, int[] rowOrder, int[] colOrder, int[] label) {
+		this.key = key;
+		this.size = size;
+		this.transposed = transposed;
+		this.rowOrder = rowOrder;
+		this.colOrder = colOrder;
+		this.label = label;
+		value = new int[size + 1];
+		for (int v = 1; v <= size; ++v) {
+			value[label[v]] = v;
+		}
+	}
+
+	static CanonicalForm of(Sudoku puzzle) {
+		int size = puzzle.getSize();
+		int cellSize = puzzle.getCellSize();
+		int[] cells = new int[size * size];
+		int[] frequency = new int[size + 1];
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (!puzzle.isUnassigned(i, j)) {
+					cells[i * size + j] = puzzle.get(i, j);
+					++frequency[puzzle.get(i, j)];
+				}
+			}
+		}
+
+		long[][] lineSigs = lineSignatures(cells, size, frequency);
+		long[] rowSig = lineSigs[0];
+		long[] colSig = lineSigs[1];
+		long[] bandSig = groupSignatures(rowSig, cellSize);
+		long[] stackSig = groupSignatures(colSig, cellSize);
+		long[] bands = bandSig.clone();
+		long[] stacks = stackSig.clone();
+		Arrays.sort(bands);
+		Arrays.sort(stacks);
+		int orientation = compare(bands, stacks);
+
+		Search search = new Search(cells, size);
+		if (orientation <= 0) {
+			search.run(false, orders(rowSig, bandSig, cellSize), orders(colSig, stackSig, cellSize));
+		}
+		if (orientation >= 0) {
+			search.run(true, orders(colSig, stackSig, cellSize), orders(rowSig, bandSig, cellSize));
+		}
+		return search.result();
+	}
+
+	/**
+	 * @return the solution moved to the canonical position, in the format of
+	 *         {@link #key}
+	 */
+	String toCanonical(Sudoku solution) {
+		char[] canonical = new char[size * size];
+		for (int ci = 0; ci < size; ++ci) {
+			for (int cj = 0; cj < size; ++cj) {
+				canonical[ci * size + cj] = (char) label[solution.get(inputRow(ci, cj), inputColumn(ci, cj))];
+			}
+		}
+		return new String(canonical);
+	}
+
+	/**
+	 * @param canonical a solution of the canonical puzzle, see
+	 *        {@link #toCanonical(Sudoku)}
+	 * @param input the puzzle this form was built from
+	 * @return the solution moved back to the position of input
+	 */
+	Sudoku fromCanonical(String canonical, Sudoku input) {
+		Sudoku solution = new Sudoku(input);
+		for (int ci = 0; ci < size; ++ci) {
+			for (int cj = 0; cj < size; ++cj) {
+				solution.put(inputRow(ci, cj), inputColumn(ci, cj), value[canonical.charAt(ci * size + cj)]);
+			}
+		}
+		return solution;
+	}
+
+	private int inputRow(int ci, int cj) {
+		return transposed ? colOrder[cj] : rowOrder[ci];
+	}
+
+	private int inputColumn(int ci, int cj) {
+		return transposed ? rowOrder[ci] : colOrder[cj];
+	}
+
+	/**
+	 * Invariants of rows and columns that survive all symmetries; starts
+	 * with the number of givens and mixes in the invariants of the crossing
+	 * line and the frequency of the value for every given
+	 * @return row and column signatures
+	 */
+	private static long[][] lineSignatures(int[] cells, int size, int[] frequency) {
+		long[] rowSig = new long[size];
+		long[] colSig = new long[size];
+		for (int cell = 0; cell < cells.length; ++cell) {
+			if (cells[cell] != 0) {
+				++rowSig[cell / size];
+				++colSig[cell % size];
+			}
+		}
+		long[] entries = new long[size];
+		for (int round = 0; round < REFINEMENTS; ++round) {
+			long[] nextRow = new long[size];
+			long[] nextCol = new long[size];
+			for (int line = 0; line < size; ++line) {
+				nextRow[line] = refine(rowSig[line], cells, line * size, 1, colSig, frequency, entries);
+				nextCol[line] = refine(colSig[line], cells, line, size, rowSig, frequency, entries);
+			}
+			rowSig = nextRow;
+			colSig = nextCol;
+		}
+		return new long[][] { rowSig, colSig };
+	}
+
+	private static long refine(long sig, int[] cells, int first, int step, long[] crossSig, int[] frequency,
+			long[] entries) {
+		int size = crossSig.length;
+		int n = 0;
+		for (int k = 0; k < size; ++k) {
+			int v = cells[first + k * step];
+			if (v != 0) {
+				entries[n++] = mix(crossSig[k] * 31 + frequency[v]);
+			}
+		}
+		Arrays.sort(entries, 0, n);
+		long h = mix(sig);
+		for (int k = 0; k < n; ++k) {
+			h = mix(h * 31 + entries[k]);
+		}
+		return h;
+	}
+
+	private static long[] groupSignatures(long[] lineSig, int cellSize) {
+		long[] groupSig = new long[cellSize];
+		long[] members = new long[cellSize];
+		for (int g = 0; g < cellSize; ++g) {
+			System.arraycopy(lineSig, g * cellSize, members, 0, cellSize);
+			Arrays.sort(members);
+			long h = 0;
+			for (long m : members) {
+				h = mix(h * 31 + m);
+			}
+			groupSig[g] = h;
+		}
+		return groupSig;
+	}
+
+	private static long mix(long x) {
+		x *= 0x9E3779B97F4A7C15L;
+		return x ^ (x >>> 29);
+	}
+
+	private static int compare(long[] a, long[] b) {
+		for (int k = 0; k < a.length; ++k) {
+			if (a[k] != b[k])
+				return a[k] < b[k] ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * All line orders that sort groups (bands or stacks) by their signature
+	 * and lines within a group by theirs; only equal signatures are
+	 * permuted, and at most {@link #MAX_CANDIDATES} orders are made
+	 */
+	private static List<int[]> orders(long[] lineSig, long[] groupSig, int cellSize) {
+		List<int[]> groupOrders = tiePermutations(sortedIndices(groupSig, 0, cellSize), groupSig);
+		// line orders within every group
+		List<List<int[]>> within = new ArrayList<List<int[]>>(cellSize);
+		for (int g = 0; g < cellSize; ++g) {
+			within.add(tiePermutations(sortedIndices(lineSig, g * cellSize, cellSize), lineSig));
+		}
+		List<int[]> result = new ArrayList<int[]>();
+		for (int[] groupOrder : groupOrders) {
+			combine(groupOrder, within, 0, new int[lineSig.length], cellSize, result);
+			if (result.size() >= MAX_CANDIDATES)
+				break;
+		}
+		return result;
+	}
+
+	private static void combine(int[] groupOrder, List<List<int[]>> within, int position, int[] order,
+			int cellSize, List<int[]> result) {
+		if (result.size() >= MAX_CANDIDATES)
+			return;
+		if (position == cellSize) {
+			result.add(order.clone());
+			return;
+		}
+		for (int[] lines : within.get(groupOrder[position])) {
+			System.arraycopy(lines, 0, order, position * cellSize, cellSize);
+			combine(groupOrder, within, position + 1, order, cellSize, result);
+		}
+	}
+
+	private static int[] sortedIndices(long[] sig, int first, int count) {
+		int[] indices = new int[count];
+		for (int k = 0; k < count; ++k) {
+			int index = first + k;
+			int pos = k;
+			while (pos > 0 && sig[indices[pos - 1]] > sig[index]) {
+				indices[pos] = indices[pos - 1];
+				--pos;
+			}
+			indices[pos] = index;
+		}
+		return indices;
+	}
+
+	/**
+	 * @return all orders of sorted that only swap indices of equal signature
+	 */
+	private static List<int[]> tiePermutations(int[] sorted, long[] sig) {
+		List<int[]> result = new ArrayList<int[]>();
+		permute(sorted, sig, 0, new int[sorted.length], new boolean[sorted.length], result);
+		return result;
+	}
+
+	private static void permute(int[] sorted, long[] sig, int position, int[] order, boolean[] used,
+			List<int[]> result) {
+		if (result.size() >= MAX_CANDIDATES)
+			return;
+		if (position == sorted.length) {
+			result.add(order.clone());
+			return;
+		}
+		long wanted = sig[sorted[position]];
+		for (int k = 0; k < sorted.length; ++k) {
+			if (!used[k] && sig[sorted[k]] == wanted) {
+				used[k] = true;
+				order[position] = sorted[k];
+				permute(sorted, sig, position + 1, order, used, result);
+				used[k] = false;
+			}
+		}
+	}
+
+	/**
+	 * Keeps the smallest relabeled board over all candidate orders
+	 */
+	private static final class Search {
+		private final int[] cells;
+		private final int size;
+		private int[] best;
+		private int[] candidate;
+		private final int[] labels;
+		private boolean bestTransposed;
+		private int[] bestRows;
+		private int[] bestCols;
+		private int[] bestLabels;
+
+		Search(int[] cells, int size) {
+			this.cells = cells;
+			this.size = size;
+			candidate = new int[size * size];
+			labels = new int[size + 1];
+		}
+
+		void run(boolean transposed, List<int[]> rowOrders, List<int[]> colOrders) {
+			int colLimit = Math.max(1, MAX_CANDIDATES / rowOrders.size());
+			for (int[] rows : rowOrders) {
+				for (int c = 0; c < colOrders.size() && c < colLimit; ++c) {
+					int[] cols = colOrders.get(c);
+					if (relabel(transposed, rows, cols)) {
+						int[] swap = best;
+						best = candidate;
+						candidate = swap == null ? new int[size * size] : swap;
+						bestTransposed = transposed;
+						bestRows = rows;
+						bestCols = cols;
+						bestLabels = labels.clone();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Writes the board in the given position into candidate
+		 * @return true if it is smaller than best
+		 */
+		private boolean relabel(boolean transposed, int[] rows, int[] cols) {
+			Arrays.fill(labels, 0);
+			int next = 1;
+			boolean smaller = best == null;
+			for (int ci = 0, p = 0; ci < size; ++ci) {
+				for (int cj = 0; cj < size; ++cj, ++p) {
+					int v = transposed ? cells[cols[cj] * size + rows[ci]] : cells[rows[ci] * size + cols[cj]];
+					if (v != 0) {
+						if (labels[v] == 0)
+							labels[v] = next++;
+						v = labels[v];
+					}
+					if (!smaller) {
+						if (v > best[p])
+							return false;
+						smaller = v < best[p];
+					}
+					candidate[p] = v;
+				}
+			}
+			return smaller;
+		}
+
+		CanonicalForm result() {
+			// values that are not given take the remaining labels
+			int next = 1;
+			for (int v = 1; v <= size; ++v) {
+				next = Math.max(next, bestLabels[v] + 1);
+			}
+			for (int v = 1; v <= size; ++v) {
+				if (bestLabels[v] == 0)
+					bestLabels[v] = next++;
+			}
+			char[] key = new char[size * size];
+			for (int p = 0; p < key.length; ++p) {
+				key[p] = (char) best[p];
+			}
+			return new CanonicalForm(new String(key), size, bestTransposed, bestRows, bestCols, bestLabels);
+		}
+	}
+}
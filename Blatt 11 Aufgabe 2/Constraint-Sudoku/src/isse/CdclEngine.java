@@ -0,0 +1,586 @@
+package isse;
+
+import java.util.Arrays;
+
+/**
+ * A small conflict-driven clause learning SAT solver for the CNF that
+ * {@link SatSolver} builds
+ *
+ * Variables are numbered from 0; literal 2*v stands for v, 2*v+1 for its
+ * negation, so lit ^ 1 negates. Binary clauses are kept as implication
+ * lists per literal, longer clauses are watched by their first two
+ * literals. A conflict is analyzed back to its first unique implication
+ * point, the learned clause is shortened by the reasons of its literals and
+ * the search jumps back to the second highest level in it. Branching takes
+ * the variable of highest VSIDS activity with its last value (phase
+ * saving). Runs restart after the conflict budgets of a
+ * {@link RestartPolicy}; learned clauses with many decision levels are
+ * dropped now and then.
+ *
+ * Every counter goes straight to the {@link StatisticsObject}: decisions
+ * as recursive calls, conflicts as backtracks, implied literals as
+ * propagations and literals set false as domain removals
+ *
+ */
+final class CdclEngine {
+	private static final byte TRUE = 1;
+	private static final byte FALSE = -1;
+	// reason of decisions and of literals fixed up front; a binary reason
+	// (other or lit) is stored as -2 - other, a long one as its clause index
+	private static final int NO_REASON = -1;
+	private static final int NO_CONFLICT = -1;
+	private static final int BINARY_CONFLICT = Integer.MIN_VALUE;
+	private static final double ACTIVITY_DECAY = 0.95;
+	private static final int FIRST_REDUCTION = 2000;
+	private static final int REDUCTION_STEP = 300;
+
+	private final int nVars;
+	private final StatisticsObject stats;
+	// by literal; the implications of a literal must hold once it is false
+	private final byte[] value;
+	private final int[][] implications;
+	private final int[] nImplications;
+	private final int[][] watches;
+	private final int[] nWatches;
+	// by variable
+	private final int[] level;
+	private final int[] reason;
+	private final boolean[] seen;
+	private final int[] phase;
+	private final double[] activity;
+	private double increment = 1;
+	// max-heap of unassigned variables by activity, with each variable's slot
+	private final int[] heap;
+	private final int[] heapSlot;
+	private int heapSize = 0;
+
+	private final int[] trail;
+	private int trailSize = 0;
+	private int propagated = 0;
+	// trail size at the start of every decision level
+	private final int[] levelStart;
+	private int decisionLevel = 0;
+
+	// long clauses, null once dropped; the glue of a learned clause is its
+	// number of distinct levels, given clauses have 0 and are never dropped
+	private int[][] clauses = new int[64][];
+	private int[] lbd = new int[64];
+	private int nClauses = 0;
+	private int nLearned = 0;
+	private int reduceAt = FIRST_REDUCTION;
+	private int reductions = 0;
+
+	private int conflictA;
+	private int conflictB;
+	private final int[] learned;
+	private int nLearnedLits;
+	// the learned literals before shortening, to clear seen
+	private final int[] analyzed;
+	private final int[] levelStamp;
+	private int stamp = 0;
+	private boolean unsatisfiable = false;
+
+	private long implied = 0;
+	private long falsified = 0;
+
+	CdclEngine(int nVars, StatisticsObject stats) {
+		this.nVars = nVars;
+		this.stats = stats;
+		value = new byte[2 * nVars];
+		implications = new int[2 * nVars][];
+		nImplications = new int[2 * nVars];
+		watches = new int[2 * nVars][];
+		nWatches = new int[2 * nVars];
+		level = new int[nVars];
+		reason = new int[nVars];
+		seen = new boolean[nVars];
+		phase = new int[nVars];
+		activity = new double[nVars];
+		heap = new int[nVars];
+		heapSlot = new int[nVars];
+		Arrays.fill(heapSlot, -1);
+		trail = new int[nVars];
+		levelStart = new int[nVars + 1];
+		learned = new int[nVars];
+		analyzed = new int[nVars];
+		levelStamp = new int[nVars + 1];
+	}
+
+	int getVariables() {
+		return nVars;
+	}
+
+	/**
+	 * Forgets all clauses and assignments but keeps the arrays, so one
+	 * engine serves many problems of the same number of variables
+	 */
+	void clear() {
+		backjump(0);
+		for (int k = 0; k < trailSize; ++k) {
+			value[trail[k]] = 0;
+			value[trail[k] ^ 1] = 0;
+		}
+		trailSize = 0;
+		propagated = 0;
+		Arrays.fill(nImplications, 0);
+		Arrays.fill(nWatches, 0);
+		Arrays.fill(phase, 0);
+		Arrays.fill(activity, 0);
+		increment = 1;
+		for (int k = 0; k < heapSize; ++k) {
+			heapSlot[heap[k]] = -1;
+		}
+		heapSize = 0;
+		Arrays.fill(clauses, 0, nClauses, null);
+		nClauses = 0;
+		nLearned = 0;
+		reduceAt = FIRST_REDUCTION;
+		reductions = 0;
+		unsatisfiable = false;
+	}
+
+	static int positive(int var) {
+		return 2 * var;
+	}
+
+	static int negative(int var) {
+		return 2 * var + 1;
+	}
+
+	/**
+	 * Adds a clause at decision level 0, i.e., before the first solve or
+	 * between solves; the variables in it become branching candidates
+	 * @param lits the literals, reordered by this call
+	 * @param n number of literals used
+	 * @return false once the clauses are known to be unsatisfiable
+	 */
+	boolean addClause(int[] lits, int n) {
+		if (unsatisfiable)
+			return false;
+		backjump(0);
+		int kept = 0;
+		for (int k = 0; k < n; ++k) {
+			int lit = lits[k];
+			if (value[lit] == TRUE)
+				return true;
+			if (value[lit] != FALSE)
+				lits[kept++] = lit;
+			insert(lit >> 1);
+		}
+		if (kept == 0) {
+			unsatisfiable = true;
+		} else if (kept == 1) {
+			assign(lits[0], NO_REASON);
+			unsatisfiable = propagate() != NO_CONFLICT;
+		} else if (kept == 2) {
+			addBinary(lits[0], lits[1]);
+		} else {
+			addLong(Arrays.copyOf(lits, kept), 0);
+		}
+		return !unsatisfiable;
+	}
+
+	/**
+	 * Searches for an assignment satisfying all clauses; may be called again
+	 * after adding clauses, keeping what was learned
+	 * @return {@link SolveResult.Status#SOLVED} with the model readable by
+	 *         {@link #isTrue(int)}, or why there is none
+	 */
+	SolveResult.Status solve(RestartPolicy restarts, CancellationToken token) {
+		if (unsatisfiable)
+			return SolveResult.Status.UNSATISFIABLE;
+		backjump(0);
+		int run = 0;
+		long conflictsLeft = restarts.nodeLimit(run);
+		try {
+			while (true) {
+				int conflict = propagate();
+				if (conflict != NO_CONFLICT) {
+					stats.markBacktrack();
+					if (decisionLevel == 0) {
+						unsatisfiable = true;
+						return SolveResult.Status.UNSATISFIABLE;
+					}
+					int jump = analyze(conflict);
+					backjump(jump);
+					learn();
+					increment /= ACTIVITY_DECAY;
+					--conflictsLeft;
+					if (token.isCancelled())
+						return SolveResult.Status.TIMED_OUT;
+					continue;
+				}
+				if (conflictsLeft <= 0) {
+					stats.markRestart();
+					backjump(0);
+					conflictsLeft = restarts.nodeLimit(++run);
+				}
+				if (nLearned >= reduceAt)
+					reduceLearned();
+				int var = nextBranch();
+				if (var == -1)
+					return SolveResult.Status.SOLVED;
+				if (token.isCancelled())
+					return SolveResult.Status.TIMED_OUT;
+				stats.markRecursiveCall();
+				levelStart[++decisionLevel] = trailSize;
+				stats.markDepth(decisionLevel);
+				assign(2 * var + phase[var], NO_REASON);
+			}
+		} finally {
+			stats.markPropagations(implied);
+			stats.markDomainRemovals(falsified);
+			implied = 0;
+			falsified = 0;
+		}
+	}
+
+	/**
+	 * @return the value of var in the model of the last successful solve
+	 */
+	boolean isTrue(int var) {
+		return value[positive(var)] == TRUE;
+	}
+
+	private void addBinary(int a, int b) {
+		push(implications, nImplications, a, b);
+		push(implications, nImplications, b, a);
+	}
+
+	private int addLong(int[] clause, int glue) {
+		if (nClauses == clauses.length) {
+			clauses = Arrays.copyOf(clauses, 2 * nClauses);
+			lbd = Arrays.copyOf(lbd, 2 * nClauses);
+		}
+		int index = nClauses++;
+		clauses[index] = clause;
+		lbd[index] = glue;
+		push(watches, nWatches, clause[0], index);
+		push(watches, nWatches, clause[1], index);
+		return index;
+	}
+
+	private static void push(int[][] lists, int[] sizes, int lit, int entry) {
+		int[] list = lists[lit];
+		int n = sizes[lit];
+		if (list == null) {
+			list = lists[lit] = new int[4];
+		} else if (n == list.length) {
+			list = lists[lit] = Arrays.copyOf(list, 2 * n);
+		}
+		list[n] = entry;
+		sizes[lit] = n + 1;
+	}
+
+	private void assign(int lit, int why) {
+		int var = lit >> 1;
+		value[lit] = TRUE;
+		value[lit ^ 1] = FALSE;
+		level[var] = decisionLevel;
+		reason[var] = why;
+		trail[trailSize++] = lit;
+		if (why != NO_REASON)
+			++implied;
+		if ((lit & 1) == 1)
+			++falsified;
+	}
+
+	/**
+	 * Assigns all literals implied by the trail
+	 * @return the index of a falsified long clause, {@link #BINARY_CONFLICT}
+	 *         with conflictA and conflictB set, or {@link #NO_CONFLICT}
+	 */
+	private int propagate() {
+		while (propagated < trailSize) {
+			int falseLit = trail[propagated++] ^ 1;
+			int[] imply = implications[falseLit];
+			for (int k = nImplications[falseLit] - 1; k >= 0; --k) {
+				int lit = imply[k];
+				if (value[lit] == TRUE)
+					continue;
+				if (value[lit] == FALSE) {
+					conflictA = falseLit;
+					conflictB = lit;
+					propagated = trailSize;
+					return BINARY_CONFLICT;
+				}
+				assign(lit, -2 - falseLit);
+			}
+
+			int[] watching = watches[falseLit];
+			int n = nWatches[falseLit];
+			int kept = 0;
+			for (int w = 0; w < n; ++w) {
+				int index = watching[w];
+				int[] clause = clauses[index];
+				if (clause == null) // dropped, forget the watch
+					continue;
+				if (clause[0] == falseLit) {
+					clause[0] = clause[1];
+					clause[1] = falseLit;
+				}
+				if (value[clause[0]] == TRUE) {
+					watching[kept++] = index;
+					continue;
+				}
+				int other = 2;
+				while (other < clause.length && value[clause[other]] == FALSE) {
+					++other;
+				}
+				if (other < clause.length) {
+					clause[1] = clause[other];
+					clause[other] = falseLit;
+					push(watches, nWatches, clause[1], index);
+					continue;
+				}
+				watching[kept++] = index;
+				if (value[clause[0]] == FALSE) {
+					while (++w < n) {
+						watching[kept++] = watching[w];
+					}
+					nWatches[falseLit] = kept;
+					propagated = trailSize;
+					return index;
+				}
+				assign(clause[0], index);
+			}
+			nWatches[falseLit] = kept;
+		}
+		return NO_CONFLICT;
+	}
+
+	/**
+	 * Resolves the conflict back to the first literal of the current level
+	 * that all its paths pass through, leaving the learned clause with that
+	 * literal negated first and a literal of the jump level second
+	 * @return the level to jump back to
+	 */
+	private int analyze(int conflict) {
+		nLearnedLits = 1;
+		int open = 0;
+		int lit = -1;
+		int next = trailSize - 1;
+		while (true) {
+			if (conflict == BINARY_CONFLICT) {
+				open += see(conflictA) + see(conflictB);
+			} else if (conflict >= 0) {
+				int[] clause = clauses[conflict];
+				for (int k = lit == -1 ? 0 : 1; k < clause.length; ++k) {
+					open += see(clause[k]);
+				}
+			} else {
+				open += see(-2 - conflict);
+			}
+			while (!seen[trail[next] >> 1]) {
+				--next;
+			}
+			lit = trail[next--];
+			seen[lit >> 1] = false;
+			if (--open == 0)
+				break;
+			conflict = reason[lit >> 1];
+		}
+		learned[0] = lit ^ 1;
+
+		// drop the literals whose reason only has literals of the clause
+		int end = nLearnedLits;
+		System.arraycopy(learned, 1, analyzed, 0, end - 1);
+		nLearnedLits = 1;
+		for (int k = 1; k < end; ++k) {
+			if (!isImpliedByLearned(learned[k] >> 1))
+				learned[nLearnedLits++] = learned[k];
+		}
+		for (int k = 0; k < end - 1; ++k) {
+			seen[analyzed[k] >> 1] = false;
+		}
+
+		int jump = 0;
+		for (int k = 1; k < nLearnedLits; ++k) {
+			if (level[learned[k] >> 1] > jump) {
+				jump = level[learned[k] >> 1];
+				int swap = learned[1];
+				learned[1] = learned[k];
+				learned[k] = swap;
+			}
+		}
+		return jump;
+	}
+
+	/**
+	 * Marks a false literal of a clause being resolved
+	 * @return 1 if it is on the current level and still to be resolved
+	 */
+	private int see(int lit) {
+		int var = lit >> 1;
+		if (seen[var] || level[var] == 0)
+			return 0;
+		seen[var] = true;
+		bump(var);
+		if (level[var] == decisionLevel)
+			return 1;
+		learned[nLearnedLits++] = lit;
+		return 0;
+	}
+
+	private boolean isImpliedByLearned(int var) {
+		int why = reason[var];
+		if (why == NO_REASON)
+			return false;
+		if (why < NO_REASON)
+			return isSeenOrFixed((-2 - why) >> 1);
+		int[] clause = clauses[why];
+		for (int k = 1; k < clause.length; ++k) {
+			if (!isSeenOrFixed(clause[k] >> 1))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isSeenOrFixed(int var) {
+		return seen[var] || level[var] == 0;
+	}
+
+	/**
+	 * Adds the clause analyze left in learned and assigns its first literal
+	 */
+	private void learn() {
+		int lit = learned[0];
+		if (nLearnedLits == 1) {
+			assign(lit, NO_REASON);
+		} else if (nLearnedLits == 2) {
+			addBinary(lit, learned[1]);
+			assign(lit, -2 - learned[1]);
+		} else {
+			++stamp;
+			int glue = 0;
+			for (int k = 0; k < nLearnedLits; ++k) {
+				int l = level[learned[k] >> 1];
+				if (levelStamp[l] != stamp) {
+					levelStamp[l] = stamp;
+					++glue;
+				}
+			}
+			++nLearned;
+			assign(lit, addLong(Arrays.copyOf(learned, nLearnedLits), glue));
+		}
+	}
+
+	/**
+	 * Undoes all decision levels above target, saving the phases
+	 */
+	private void backjump(int target) {
+		if (decisionLevel <= target)
+			return;
+		for (int k = trailSize - 1; k >= levelStart[target + 1]; --k) {
+			int lit = trail[k];
+			int var = lit >> 1;
+			value[lit] = 0;
+			value[lit ^ 1] = 0;
+			phase[var] = lit & 1;
+			insert(var);
+		}
+		trailSize = levelStart[target + 1];
+		propagated = trailSize;
+		decisionLevel = target;
+	}
+
+	/**
+	 * @return the unassigned variable of highest activity, -1 if all are
+	 *         assigned
+	 */
+	private int nextBranch() {
+		while (heapSize > 0) {
+			int var = removeMax();
+			if (value[positive(var)] == 0)
+				return var;
+		}
+		return -1;
+	}
+
+	/**
+	 * Drops the learned clauses with more distinct levels than half of
+	 * them, but keeps those that are reasons
+	 */
+	private void reduceLearned() {
+		int[] glues = new int[nLearned];
+		int n = 0;
+		for (int index = 0; index < nClauses; ++index) {
+			if (clauses[index] != null && lbd[index] > 0)
+				glues[n++] = lbd[index];
+		}
+		Arrays.sort(glues, 0, n);
+		int median = Math.max(2, glues[n / 2]);
+		for (int index = 0; index < nClauses; ++index) {
+			if (clauses[index] == null || lbd[index] <= median || isReason(index))
+				continue;
+			clauses[index] = null;
+			--nLearned;
+		}
+		reduceAt = nLearned + FIRST_REDUCTION + REDUCTION_STEP * ++reductions;
+	}
+
+	private boolean isReason(int index) {
+		int lit = clauses[index][0];
+		return value[lit] == TRUE && reason[lit >> 1] == index;
+	}
+
+	private void bump(int var) {
+		if ((activity[var] += increment) > 1e100) {
+			for (int v = 0; v < nVars; ++v) {
+				activity[v] *= 1e-100;
+			}
+			increment *= 1e-100;
+		}
+		if (heapSlot[var] != -1)
+			up(heapSlot[var]);
+	}
+
+	private void insert(int var) {
+		if (heapSlot[var] != -1)
+			return;
+		heap[heapSize] = var;
+		heapSlot[var] = heapSize;
+		up(heapSize++);
+	}
+
+	private int removeMax() {
+		int max = heap[0];
+		heapSlot[max] = -1;
+		if (--heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapSlot[heap[0]] = 0;
+			down(0);
+		}
+		return max;
+	}
+
+	private void up(int slot) {
+		int var = heap[slot];
+		while (slot > 0) {
+			int parent = (slot - 1) >> 1;
+			if (activity[heap[parent]] >= activity[var])
+				break;
+			heap[slot] = heap[parent];
+			heapSlot[heap[slot]] = slot;
+			slot = parent;
+		}
+		heap[slot] = var;
+		heapSlot[var] = slot;
+	}
+
+	private void down(int slot) {
+		int var = heap[slot];
+		while (2 * slot + 1 < heapSize) {
+			int child = 2 * slot + 1;
+			if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]])
+				++child;
+			if (activity[heap[child]] <= activity[var])
+				break;
+			heap[slot] = heap[child];
+			heapSlot[heap[slot]] = slot;
+			slot = child;
+		}
+		heap[slot] = var;
+		heapSlot[var] = slot;
+	}
+}
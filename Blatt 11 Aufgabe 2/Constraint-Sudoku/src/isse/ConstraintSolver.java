@@ -1,22 +1,145 @@
 package isse;
 
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import isse.StatisticsObject.Phase;
 
 /**
  * A constraint solver for sudokus, can use propagation as well as branching
  * heuristics
- * 
+ *
+ * Every search node lets the {@link DomainStore} propagate to a fixpoint,
+ * then branches on the cell chosen by the {@link VariableSelector} (the
+ * smallest domain by default), trying values in the order of the
+ * {@link ValueOrdering} (ascending by default). The search works on one
+ * domain store; every branch remembers the trail position it started from
+ * and rolls back to it on failure
+ *
+ * If a {@link ForkJoinPool} is given, the branches of every branching point
+ * above parallelDepth are searched as parallel tasks, each on its own copy of
+ * the store; the first task to find a solution stops all others
+ *
+ * Every search node polls a {@link CancellationToken}, see
+ * {@link #solve(Sudoku, CancellationToken)}
+ *
+ * With a {@link RestartPolicy}, a sequential solve gives every run a budget
+ * of search nodes and starts over from the givens once it is used up. The
+ * values refuted on the abandoned path are kept as nogoods (sets of
+ * decisions that cannot all hold) and propagated in the following runs
+ *
  * @author alexander
  *
  */
-public class ConstraintSolver implements Solver {
+public class ConstraintSolver implements Solver, SolutionCounter {
+	// of the board at hand
+	protected int size;
 	protected StatisticsObject stats;
 	DomainStore store;
+	private Sudoku solution;
+	private long propagationTime;
+	// counters of the store when the search started, it may be reused
+	private long[] countersBefore;
+	private Set<PropagationRule> rules = PropagationRule.DEFAULT;
+	private VariableSelector selector = new MinDomainSelector();
+	private ValueOrdering ordering = ValueOrdering.ASCENDING;
+
+	// learning more only slows down every node
+	private static final int MAX_NOGOODS = 10000;
+	private RestartPolicy restartPolicy;
+	// of a restarting search: whether one runs, budget of the current run,
+	// the decisions on the current path as cells and values, the nogoods as
+	// cell*size + value-1
+	private boolean restarting;
+	private long nodesLeft;
+	private boolean runCutOff;
+	private int[] decisionCells;
+	private int[] decisionValues;
+	private final List<int[]> nogoods = new ArrayList<int[]>();
+
+	private final ForkJoinPool pool;
+	private final int parallelDepth;
+	// shared by all tasks of one solve, cancelled by the first solution
+	// or with the caller's token
+	private CancellationToken stop;
+	// some task of the last search gave up on the caller's token
+	private volatile boolean cutOff;
 
 	public ConstraintSolver(StatisticsObject stats) {
+		this(stats, null, 0);
+	}
+
+	/**
+	 * @param stats
+	 * @param pool runs the branches of the upper search levels in parallel
+	 * @param parallelDepth branching points with fewer decisions above
+	 *        them fork their branches, deeper ones search sequentially
+	 */
+	public ConstraintSolver(StatisticsObject stats, ForkJoinPool pool, int parallelDepth) {
 		super();
 		this.stats = stats;
+		this.pool = pool;
+		this.parallelDepth = parallelDepth;
+	}
+
+	/**
+	 * Chooses the inference rules run at every search node, takes effect
+	 * with the next solve
+	 * @param rules
+	 */
+	public void setPropagationRules(Set<PropagationRule> rules) {
+		this.rules = rules;
+	}
+
+	public Set<PropagationRule> getPropagationRules() {
+		return rules;
+	}
+
+	/**
+	 * Chooses the branching cells of all following searches
+	 * @param selector
+	 */
+	public void setVariableSelector(VariableSelector selector) {
+		this.selector = selector;
+	}
+
+	public VariableSelector getVariableSelector() {
+		return selector;
+	}
+
+	/**
+	 * Chooses the order of the values at the branching points of all
+	 * following searches
+	 * @param ordering
+	 */
+	public void setValueOrdering(ValueOrdering ordering) {
+		this.ordering = ordering;
+	}
+
+	public ValueOrdering getValueOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Lets following sequential solves restart after the node budgets of
+	 * policy; parallel solves, counting and the solution stream do not
+	 * restart. Runs only take different paths if the selector or the
+	 * ordering is randomized or learns, e.g.,
+	 * {@link MinDomainSelector#MinDomainSelector(boolean, java.util.Random)}
+	 * or {@link WeightedDegreeSelector}
+	 * @param policy null to search without restarts
+	 */
+	public void setRestartPolicy(RestartPolicy policy) {
+		this.restartPolicy = policy;
+	}
+
+	public RestartPolicy getRestartPolicy() {
+		return restartPolicy;
 	}
 
 	@Override
@@ -26,80 +149,397 @@ public class ConstraintSolver implements Solver {
 
 	@Override
 	public Sudoku solve(Sudoku input) {
+		return trySolve(input, CancellationToken.NONE);
+	}
+
+	@Override
+	public SolveResult solve(Sudoku input, CancellationToken token) {
+		StatisticsSnapshot before = stats.snapshot();
+		Sudoku solution = trySolve(input, token);
+		return SolveResult.of(solution, cutOff, stats.snapshot().since(before));
+	}
+
+	/**
+	 * @return the solution, null if there is none or token was cancelled
+	 */
+	private Sudoku trySolve(Sudoku input, CancellationToken token) {
 		stats.tickRuntime();
-		Sudoku assignment = solveRek(input);
-		stats.tockRuntime();
-		return assignment;
-	}
-
-	private Sudoku solveRek(Sudoku input) {
-		Sudoku assignment = new Sudoku(input);
-		DomainStore store = new DomainStore(input);
-		boolean hasFoundSingleOccurence = false;
-		boolean hasAssignedValue = false;
-		while (!assignment.isSolution(input) && assignment.isValid()) {
-			hasFoundSingleOccurence = false;
-			hasAssignedValue = false;
-			for (int i = 0; i < 9; i++) {
-				for (int j = 0; j < 9; j++) {
-					if (assignment.isUnassigned(i, j) && store.isDomainSolved(i, j)) {
-						int value = store.getSolutionForVariable(i, j);
-						assignment.put(i, j, value);
-						store.updateDomainStoreWithNewFixValue(i, j, value);
-						hasAssignedValue = true;
-					}
+		long start = System.nanoTime();
+		store = new DomainStore(input, rules);
+		countersBefore = counters(null);
+		return search(input, token, start);
+	}
+
+	/**
+	 * Searches right on from, e.g., the store of a {@link SolvingSession}
+	 * with its edits already propagated; sequential solves only
+	 * @param input the board from holds, only its size is used
+	 * @param from propagated and consistent; the search leaves it at the
+	 *        solution or in an undone state, callers undo to a mark taken
+	 *        before
+	 * @param token
+	 * @return the solution, null if there is none or token was cancelled
+	 */
+	Sudoku solveFrom(Sudoku input, DomainStore from, CancellationToken token) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		store = from;
+		countersBefore = counters(from);
+		return search(input, token, start);
+	}
+
+	/**
+	 * Searches from the store set up by the caller
+	 * @param start when the caller started to set it up
+	 */
+	private Sudoku search(final Sudoku input, CancellationToken token, long start) {
+		size = input.getSize();
+		solution = null;
+		propagationTime = 0;
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+		stop = token.child();
+		cutOff = false;
+		selector.start(store);
+		if (!store.isConsistent()) {
+			// the givens contradict each other
+		} else if ((pool == null || parallelDepth <= 0) && restartPolicy != null) {
+			solveWithRestarts(input);
+		} else if (pool == null || parallelDepth <= 0) {
+			solveRek(input, 0);
+		} else {
+			pool.invoke(new RecursiveTask<Boolean>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Boolean compute() {
+					return solveRek(input, 0);
 				}
+			});
+		}
+		Sudoku result = solution;
+		flushStats();
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime - propagationTime);
+		stats.tockRuntime();
+		return result;
+	}
+
+	/**
+	 * @return true if the last search gave up on its token, see
+	 *         {@link #solveFrom(Sudoku, DomainStore, CancellationToken)}
+	 */
+	boolean wasCutOff() {
+		return cutOff;
+	}
+
+	/**
+	 * All solutions of input as a lazy stream: the search only goes on when
+	 * the next solution is asked for, so, e.g., limit(k) stops it after k
+	 * solutions. The values are tried in the order of the
+	 * {@link ValueOrdering}. A parallel() stream splits the search tree among
+	 * the fork/join workers; the order of the solutions is not defined then
+	 *
+	 * The counters go to stats, runtime and phases are not measured
+	 * @param input
+	 * @return the solutions, empty if there is none
+	 */
+	public Stream<Sudoku> solutions(Sudoku input) {
+		return StreamSupport.stream(new SolutionSpliterator(input, rules, selector, ordering, stats), false);
+	}
+
+	/**
+	 * Runs the same propagation and branching as {@link #solve(Sudoku)}
+	 * but goes on after a solution; always searches sequentially
+	 */
+	@Override
+	public int countSolutions(Sudoku input, int limit) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		size = input.getSize();
+		store = new DomainStore(input, rules);
+		propagationTime = 0;
+		countersBefore = counters(null);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+		selector.start(store);
+		int count = store.isConsistent() && limit > 0 ? countRek(0, limit) : 0;
+		flushStats();
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime - propagationTime);
+		stats.tockRuntime();
+		return count;
+	}
+
+	/**
+	 * @return the number of solutions below the current node, at most limit
+	 */
+	private int countRek(int depth, int limit) {
+		stats.markDepth(depth);
+		long propagationStart = System.nanoTime();
+		boolean consistent = store.propagate();
+		propagationTime += System.nanoTime() - propagationStart;
+		if (!consistent) {
+			selector.failed(store);
+			return 0;
+		}
+
+		int cell = selector.selectCell(store);
+		if (cell == -1) {
+			return 1;
+		}
+		int count = 0;
+		for (long rest = store.getDomainMask(cell / size, cell % size); rest != 0 && count < limit;) {
+			int value = ordering.nextValue(store, cell, rest);
+			rest &= ~(1L << (value - 1));
+			int storeMark = store.mark();
+			store.assign(cell / size, cell % size, value);
+			stats.markRecursiveCall();
+			count += countRek(depth + 1, limit - count);
+			store.undo(storeMark);
+			stats.markBacktrack();
+		}
+		return count;
+	}
+
+	/**
+	 * Runs solveRek with growing node budgets until it finds a solution or
+	 * refutes the whole tree
+	 */
+	private void solveWithRestarts(Sudoku input) {
+		decisionCells = new int[size * size];
+		decisionValues = new int[size * size];
+		int rootMark = store.mark();
+		restarting = true;
+		try {
+			for (int run = 0;; ++run) {
+				nodesLeft = restartPolicy.nodeLimit(run);
+				runCutOff = false;
+				if (solveRek(input, 0) || !runCutOff)
+					return;
+				store.undo(rootMark);
+				stats.markRestart();
 			}
+		} finally {
+			restarting = false;
+			nogoods.clear();
+			decisionCells = null;
+			decisionValues = null;
+		}
+	}
 
-			if(!hasAssignedValue){
-				hasFoundSingleOccurence = store.checkSingleOccurenceUnit();
-			}			
-
-			if (!hasAssignedValue && !hasFoundSingleOccurence) {
-				// start heuristik
-				int[] pos = store.getCellWithSmallestDomain();
-				if (pos[0] == -1)
-					return null;
-
-				ArrayList<Integer> possibleSolutions = new ArrayList<Integer>();
-				possibleSolutions.addAll(store.getDomainForCell(pos[0], pos[1]));				
-				Sudoku result = null;
-				while (!possibleSolutions.isEmpty()) {
-					// if (possibleSolutions.size() == 1) {
-					// break;
-					// }
-					
-					int value = possibleSolutions.get(0);
-					Sudoku rekSudoku = new Sudoku(assignment);
-					rekSudoku.put(pos[0], pos[1], value);
-					
-					stats.markRecursiveCall();
-					result = solveRek(rekSudoku);
-					if (result == null) 
-					{
-						if (possibleSolutions.size() == 1)
-						{
-							return null;
-						} 
-						else 
-						{
-							possibleSolutions.remove(new Integer(value));
-						}
+	private boolean solveRek(Sudoku input, int depth) {
+		if (stop.isCancelled()) { // another task got there first or time is up
+			cutOff = true;
+			return false;
+		}
+		if (restarting && --nodesLeft < 0) {
+			runCutOff = true;
+			return false;
+		}
+		stats.markDepth(depth);
+		long propagationStart = System.nanoTime();
+		boolean consistent = store.propagate() && (nogoods.isEmpty() || applyNogoods());
+		propagationTime += System.nanoTime() - propagationStart;
+		if (!consistent) {
+			selector.failed(store);
+			return false;
+		}
 
+		// start heuristik
+		int cell = selector.selectCell(store);
+		if (cell == -1) { // every domain is down to one value
+			solution = new Sudoku(input);
+			store.copySolution(solution);
+			stop.cancel();
+			return true;
+		}
+
+		int row = cell / size;
+		int column = cell % size;
+		long possibleSolutions = store.getDomainMask(row, column);
+		if (pool != null && depth < parallelDepth) {
+			return branchInParallel(input, cell, possibleSolutions, depth);
+		}
+		// values whose subtree was searched completely
+		long refuted = 0;
+		while (possibleSolutions != 0) {
+			int value = ordering.nextValue(store, cell, possibleSolutions);
+			int storeMark = store.mark();
+			store.assign(row, column, value);
+			if (decisionCells != null) {
+				decisionCells[depth] = cell;
+				decisionValues[depth] = value;
+			}
+
+			stats.markRecursiveCall();
+			if (solveRek(input, depth + 1))
+			{
+				return true;
+			}
+			store.undo(storeMark);
+			stats.markBacktrack();
+			if (runCutOff) {
+				learnNogoods(depth, cell, refuted);
+				return false;
+			}
+			refuted |= 1L << (value - 1);
+			possibleSolutions &= ~(1L << (value - 1));
+		}
+		return false;
+	}
+
+	/**
+	 * Records that none of the refuted values of cell goes together with the
+	 * decisions above depth
+	 */
+	private void learnNogoods(int depth, int cell, long refuted) {
+		for (; refuted != 0 && nogoods.size() < MAX_NOGOODS; refuted &= refuted - 1) {
+			int[] nogood = new int[depth + 1];
+			for (int d = 0; d < depth; ++d) {
+				nogood[d] = decisionCells[d] * size + decisionValues[d] - 1;
+			}
+			nogood[depth] = cell * size + Long.numberOfTrailingZeros(refuted);
+			nogoods.add(nogood);
+		}
+	}
+
+	/**
+	 * Unit propagation over the nogoods: of a nogood whose decisions all
+	 * hold but one, the last one is ruled out
+	 * @return false if all decisions of a nogood hold
+	 */
+	private boolean applyNogoods() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int[] nogood : nogoods) {
+				int open = -1;
+				for (int decision : nogood) {
+					long domain = store.domainOf(decision / size);
+					long bit = 1L << (decision % size);
+					if ((domain & bit) == 0 || (domain != bit && open != -1)) {
+						// cannot hold any more or two still open
+						open = -2;
+						break;
 					}
-					else
-					{
-						return result;
-					}
+					if (domain != bit)
+						open = decision;
+				}
+				if (open == -1)
+					return false;
+				if (open >= 0) {
+					int cell = open / size;
+					store.removeDomain(cell / size, cell % size, open % size + 1);
+					changed = true;
 				}
+			}
+			if (changed && !store.propagate())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Searches every value of the branching cell in its own task; must run inside the pool
+	 */
+	private boolean branchInParallel(Sudoku input, int cell, long possibleSolutions, int depth) {
+		List<BranchTask> tasks = new ArrayList<BranchTask>(Long.bitCount(possibleSolutions));
+		for (long rest = possibleSolutions; rest != 0;) {
+			int value = ordering.nextValue(store, cell, rest);
+			rest &= ~(1L << (value - 1));
+			tasks.add(new BranchTask(this, input, cell / size, cell % size, value, depth + 1));
+		}
+		for (int k = tasks.size() - 1; k > 0; --k) {
+			tasks.get(k).fork();
+		}
+		// work on the first branch ourselves, then collect the others;
+		// losing tasks notice the stop token and return quickly
+		Sudoku result = tasks.get(0).compute();
+		for (int k = 1; k < tasks.size(); ++k) {
+			Sudoku taskResult = tasks.get(k).join();
+			if (result == null) {
+				result = taskResult;
+			}
+		}
+		if (result == null) {
+			return false;
+		}
+		solution = result;
+		return true;
+	}
+
+	/**
+	 * One branch of a parallel branching point, owns a copy of the store
+	 */
+	private static class BranchTask extends RecursiveTask<Sudoku> {
+		private static final long serialVersionUID = 1L;
+		private final ConstraintSolver parent;
+		private final ConstraintSolver branch;
+		private final Sudoku input;
+		private final int row;
+		private final int column;
+		private final int value;
+		private final int depth;
+
+		BranchTask(ConstraintSolver parent, Sudoku input, int row, int column, int value, int depth) {
+			this.parent = parent;
+			this.input = input;
+			this.row = row;
+			this.column = column;
+			this.value = value;
+			this.depth = depth;
+			// copy now, the parent goes on changing its state
+			branch = new ConstraintSolver(new StatisticsObject(), parent.pool, parent.parallelDepth);
+			branch.size = parent.size;
+			branch.store = new DomainStore(parent.store);
+			branch.countersBefore = counters(null);
+			branch.stop = parent.stop;
+			branch.selector = parent.selector;
+			branch.ordering = parent.ordering;
+		}
 
+		@Override
+		protected Sudoku compute() {
+			if (parent.stop.isCancelled()) {
+				parent.cutOff = true;
+				return null;
 			}
+			branch.store.assign(row, column, value);
+			branch.stats.markRecursiveCall();
+			boolean found = branch.solveRek(input, depth);
+			if (branch.cutOff)
+				parent.cutOff = true;
+			branch.flushStats();
+			parent.stats.merge(branch.stats);
+			return found ? branch.solution : null;
+		}
+	}
 
+	/**
+	 * Hands the counters kept outside of stats over to it
+	 */
+	private void flushStats() {
+		long[] counters = counters(store);
+		stats.markDomainRemovals(counters[0] - countersBefore[0]);
+		stats.markPropagations(counters[1] - countersBefore[1]);
+		for (PropagationRule rule : PropagationRule.values()) {
+			stats.markRuleHits(rule, counters[rule.ordinal() + 2] - countersBefore[rule.ordinal() + 2]);
 		}
-		if (assignment.isSolution(input)) {
-			return assignment;
-		} else {
-			return null;
+		stats.addPhaseTime(Phase.PROPAGATION, propagationTime);
+	}
+
+	/**
+	 * @return removals, propagations and the hits of every rule so far,
+	 *         all 0 for a null store
+	 */
+	private static long[] counters(DomainStore store) {
+		long[] counters = new long[PropagationRule.values().length + 2];
+		if (store == null)
+			return counters;
+		counters[0] = store.getRemovals();
+		counters[1] = store.getPropagations();
+		for (PropagationRule rule : PropagationRule.values()) {
+			counters[rule.ordinal() + 2] = store.getRuleHits(rule);
 		}
+		return counters;
 	}
 }
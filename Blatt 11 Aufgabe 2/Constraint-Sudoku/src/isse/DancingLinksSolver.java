@@ -0,0 +1,329 @@
+package isse;
+
+import isse.StatisticsObject.Phase;
+
+/**
+ * Solves sudokus as an exact cover problem with Knuth's Dancing Links
+ * (Algorithm X)
+ *
+ * Every candidate "cell (i, j) holds value v" is a matrix row covering four
+ * columns: the cell, value v in row i, value v in column j and value v in
+ * the sub-field; a solution picks rows covering each column exactly once.
+ * For 9x9 these are 729 rows and 324 columns.
+ *
+ * All nodes live in preallocated int arrays (links, column, candidate) that
+ * are built once per solver and board size; a solve covers the givens,
+ * searches, and uncovers everything again, so no objects are created
+ * during search
+ *
+ */
+public class DancingLinksSolver implements Solver, SolutionCounter {
+	// of the matrix built last
+	protected int size;
+	protected int cellSize;
+	protected StatisticsObject stats;
+
+	private int nColumns;
+	private int nCandidates;
+	private static final int ROOT = 0;
+	// node arena: ROOT, column headers 1..nColumns, then 4 nodes per candidate
+	private int[] left;
+	private int[] right;
+	private int[] up;
+	private int[] down;
+	private int[] column;
+	private int[] candidate;
+	private int[] columnSize;
+	// first node of every candidate row
+	private int[] rowStart;
+	// candidates picked per search depth
+	private int[] picked;
+	private int[] givenRows;
+	private int nGivens;
+	private int solutionDepth;
+	private CancellationToken token = CancellationToken.NONE;
+	// the last search gave up on the token
+	private boolean cutOff;
+
+	public DancingLinksSolver(StatisticsObject stats) {
+		this.stats = stats;
+		allocate(9);
+	}
+
+	private void allocate(int size) {
+		this.size = size;
+		cellSize = (int) Math.round(Math.sqrt(size));
+		nColumns = 4 * size * size;
+		nCandidates = size * size * size;
+		int nNodes = 1 + nColumns + 4 * nCandidates;
+		left = new int[nNodes];
+		right = new int[nNodes];
+		up = new int[nNodes];
+		down = new int[nNodes];
+		column = new int[nNodes];
+		candidate = new int[nNodes];
+		columnSize = new int[nColumns + 1];
+		rowStart = new int[nCandidates];
+		picked = new int[size * size];
+		givenRows = new int[size * size];
+		buildMatrix();
+	}
+
+	@Override
+	public StatisticsObject getStats() {
+		return stats;
+	}
+
+	private void buildMatrix() {
+		for (int c = 0; c <= nColumns; ++c) {
+			left[c] = c == 0 ? nColumns : c - 1;
+			right[c] = c == nColumns ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+		}
+		int node = nColumns + 1;
+		int n2 = size * size;
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				int box = (i / cellSize) * cellSize + j / cellSize;
+				for (int v = 0; v < size; ++v) {
+					int cand = (i * size + j) * size + v;
+					int[] columns = { 1 + i * size + j, 1 + n2 + i * size + v, 1 + 2 * n2 + j * size + v,
+							1 + 3 * n2 + box * size + v };
+					rowStart[cand] = node;
+					for (int k = 0; k < 4; ++k) {
+						int col = columns[k];
+						column[node] = col;
+						candidate[node] = cand;
+						// append at the bottom of the column
+						up[node] = up[col];
+						down[node] = col;
+						down[up[col]] = node;
+						up[col] = node;
+						++columnSize[col];
+						// link into the row
+						left[node] = k == 0 ? node + 3 : node - 1;
+						right[node] = k == 3 ? node - 3 : node + 1;
+						++node;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public Sudoku solve(Sudoku input) {
+		return trySolve(input, CancellationToken.NONE);
+	}
+
+	@Override
+	public SolveResult solve(Sudoku input, CancellationToken token) {
+		StatisticsSnapshot before = stats.snapshot();
+		Sudoku solution = trySolve(input, token);
+		return SolveResult.of(solution, cutOff, stats.snapshot().since(before));
+	}
+
+	/**
+	 * @return the solution, null if there is none or token was cancelled
+	 */
+	private Sudoku trySolve(Sudoku input, CancellationToken token) {
+		this.token = token;
+		cutOff = false;
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		Sudoku solution = null;
+		boolean consistent = coverGivens(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+
+		if (consistent && search(0)) {
+			solution = new Sudoku(input);
+			for (int k = 0; k < solutionDepth; ++k) {
+				int cand = picked[k];
+				solution.put(cand / size, cand % size + 1);
+			}
+		}
+		uncoverGivens();
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
+		stats.tockRuntime();
+		return solution;
+	}
+
+	@Override
+	public int countSolutions(Sudoku input, int limit) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		boolean consistent = coverGivens(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+		int count = consistent && limit > 0 ? count(0, limit) : 0;
+		uncoverGivens();
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
+		stats.tockRuntime();
+		return count;
+	}
+
+	/**
+	 * Covers the rows of all givens of input, stops at the first given that
+	 * clashes with an earlier one
+	 * @return false if the givens contradict each other
+	 */
+	private boolean coverGivens(Sudoku input) {
+		if (input.getSize() != size) {
+			allocate(input.getSize());
+		}
+		nGivens = 0;
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (input.isUnassigned(i, j))
+					continue;
+				int value = input.get(i, j);
+				int row = value < 1 || value > size ? -1 : rowStart[(i * size + j) * size + value - 1];
+				if (row == -1 || !isRowAvailable(row)) {
+					return false;
+				}
+				coverRow(row);
+				givenRows[nGivens++] = row;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restores the matrix for the next solve
+	 */
+	private void uncoverGivens() {
+		for (int k = nGivens - 1; k >= 0; --k) {
+			uncoverRow(givenRows[k]);
+		}
+		nGivens = 0;
+	}
+
+	/**
+	 * Like search, but goes on after a solution until limit are found
+	 * @return the number of solutions below this node, at most limit
+	 */
+	private int count(int depth, int limit) {
+		stats.markRecursiveCall();
+		stats.markDepth(depth);
+		if (right[ROOT] == ROOT) {
+			return 1;
+		}
+		int best = right[ROOT];
+		for (int c = right[best]; c != ROOT && columnSize[best] > 1; c = right[c]) {
+			if (columnSize[c] < columnSize[best])
+				best = c;
+		}
+		if (columnSize[best] == 0) {
+			return 0;
+		}
+
+		int count = 0;
+		cover(best);
+		for (int row = down[best]; row != best && count < limit; row = down[row]) {
+			for (int j = right[row]; j != row; j = right[j]) {
+				cover(column[j]);
+			}
+			count += count(depth + 1, limit - count);
+			for (int j = left[row]; j != row; j = left[j]) {
+				uncover(column[j]);
+			}
+			stats.markBacktrack();
+		}
+		uncover(best);
+		return count;
+	}
+
+	private boolean search(int depth) {
+		if (token.isCancelled()) { // unwinds like a dead end, restoring the matrix
+			cutOff = true;
+			return false;
+		}
+		stats.markRecursiveCall();
+		stats.markDepth(depth);
+		if (right[ROOT] == ROOT) { // every column covered
+			solutionDepth = depth;
+			return true;
+		}
+		// the column with fewest remaining rows
+		int best = right[ROOT];
+		for (int c = right[best]; c != ROOT && columnSize[best] > 1; c = right[c]) {
+			if (columnSize[c] < columnSize[best])
+				best = c;
+		}
+		if (columnSize[best] == 0) {
+			return false;
+		}
+
+		cover(best);
+		for (int row = down[best]; row != best; row = down[row]) {
+			picked[depth] = candidate[row];
+			for (int j = right[row]; j != row; j = right[j]) {
+				cover(column[j]);
+			}
+			boolean found = search(depth + 1);
+			for (int j = left[row]; j != row; j = left[j]) {
+				uncover(column[j]);
+			}
+			if (found) {
+				uncover(best);
+				return true;
+			}
+			stats.markBacktrack();
+		}
+		uncover(best);
+		return false;
+	}
+
+	private boolean isRowAvailable(int row) {
+		int node = row;
+		do {
+			int col = column[node];
+			if (right[left[col]] != col) // column already covered
+				return false;
+			node = right[node];
+		} while (node != row);
+		return true;
+	}
+
+	private void coverRow(int row) {
+		int node = row;
+		do {
+			cover(column[node]);
+			node = right[node];
+		} while (node != row);
+	}
+
+	private void uncoverRow(int row) {
+		int node = row;
+		do {
+			node = left[node];
+			uncover(column[node]);
+		} while (node != row);
+	}
+
+	private void cover(int col) {
+		right[left[col]] = right[col];
+		left[right[col]] = left[col];
+		for (int i = down[col]; i != col; i = down[i]) {
+			for (int j = right[i]; j != i; j = right[j]) {
+				up[down[j]] = up[j];
+				down[up[j]] = down[j];
+				--columnSize[column[j]];
+			}
+		}
+	}
+
+	private void uncover(int col) {
+		for (int i = up[col]; i != col; i = up[i]) {
+			for (int j = left[i]; j != i; j = left[j]) {
+				++columnSize[column[j]];
+				up[down[j]] = j;
+				down[up[j]] = j;
+			}
+		}
+		right[left[col]] = col;
+		left[right[col]] = col;
+	}
+}
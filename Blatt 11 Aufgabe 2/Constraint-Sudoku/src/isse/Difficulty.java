@@ -0,0 +1,37 @@
+package isse;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * How hard a puzzle is for a human, judged by the weakest set of
+ * propagation rules that solves it without guessing, see
+ * {@link SudokuGenerator#grade(Sudoku)}
+ *
+ */
+public enum Difficulty {
+	/** hidden singles suffice */
+	EASY(EnumSet.of(PropagationRule.HIDDEN_SINGLE_ROW, PropagationRule.HIDDEN_SINGLE_COLUMN,
+			PropagationRule.HIDDEN_SINGLE_BOX)),
+	/** needs pointing or box/line reduction, too */
+	MEDIUM(EnumSet.of(PropagationRule.HIDDEN_SINGLE_ROW, PropagationRule.HIDDEN_SINGLE_COLUMN,
+			PropagationRule.HIDDEN_SINGLE_BOX, PropagationRule.POINTING, PropagationRule.BOX_LINE_REDUCTION)),
+	/** needs naked or hidden subsets, too */
+	HARD(EnumSet.allOf(PropagationRule.class)),
+	/** no rule set gets through without search */
+	EXPERT(EnumSet.allOf(PropagationRule.class));
+
+	private final Set<PropagationRule> rules;
+
+	private Difficulty(Set<PropagationRule> rules) {
+		this.rules = Collections.unmodifiableSet(rules);
+	}
+
+	/**
+	 * @return the rules a solver may use at this level
+	 */
+	public Set<PropagationRule> getRules() {
+		return rules;
+	}
+}
@@ -2,168 +2,545 @@ package isse;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Set;
 
+/**
+ * Keeps the domain of every cell as a long bitmask in one flat array; value
+ * v is represented by bit (v-1), cell (i, j) lives at index i*size + j. This
+ * covers boards up to {@link Sudoku#MAX_SIZE} values
+ *
+ * Every change is recorded on a trail of (cell, old domain) pairs so that
+ * a search can go back to an earlier state with {@link #mark()} and
+ * {@link #undo(int)} instead of copying the store
+ *
+ * Propagation is event driven: a cell whose domain shrinks to one value is
+ * queued to remove that value from its peers, and every unit (row, column
+ * or sub-field) containing a changed cell is queued for the enabled
+ * {@link PropagationRule}s. {@link #propagate()} works off the queues until
+ * nothing changes or a domain runs empty; the expensive rules only get a
+ * unit once the cheap ones are done.
+ */
 public class DomainStore {
-	private ArrayList<ArrayList<ArrayList<Integer>>> store = new ArrayList<ArrayList<ArrayList<Integer>>>();
+	protected final int size;
+	protected final int cellSize;
+	protected final long fullDomain;
+	protected final int nUnits;
+	// cells of every unit and units of every cell
+	private final int[][] unitCells;
+	private final int[][] cellUnits;
 
+	private final long[] domains;
+	// the trail: changed cells and their domains before the change; along
+	// one search path a domain only shrinks, so size^3 entries are enough
+	// for most searches
+	private int[] trailCells;
+	private long[] trailDomains;
+	private int trailTop = 0;
+	private long removals = 0;
+	private long propagations = 0;
+	private final long[] ruleHits = new long[PropagationRule.values().length];
+
+	private final Set<PropagationRule> rules;
+	private final PropagationRule[] cheapRules;
+	private final PropagationRule[] strongRules;
+	// positions of every value inside the unit at hand, see valuePositions
+	private final long[] positions;
+
+	// cells that became fixed and still have to be removed from their peers
+	private final int[] fixedQueue;
+	private int fixedTop = 0;
+	// units with changed cells that still have to run the cheap rules
+	private final int[] unitQueue;
+	private final boolean[] unitQueued;
+	private int unitTop = 0;
+	// the same for the other rules
+	private final int[] strongQueue;
+	private final boolean[] strongQueued;
+	private int strongTop = 0;
+	private boolean wipedOut = false;
+	// the unit whose constraint ran empty, -1 if not known
+	private int failedUnit = -1;
+
+	/**
+	 * Sets up the domains for the givens of sudoku and propagates them with
+	 * the {@link PropagationRule#DEFAULT} rules
+	 * @see #isConsistent()
+	 */
 	public DomainStore(Sudoku sudoku) {
-		for (int i = 0; i < 9; i++) {
-			ArrayList<ArrayList<Integer>> lane = new ArrayList<ArrayList<Integer>>();
-			for (int j = 0; j < 9; j++) {
-				ArrayList<Integer> domainarray = new ArrayList<Integer>(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9));
-				lane.add(domainarray);
-			}
-			store.add(lane);
-		}
+		this(sudoku, PropagationRule.DEFAULT);
+	}
 
+	/**
+	 * Sets up the domains for the givens of sudoku and propagates them
+	 * @param rules the inference rules to run on changed units
+	 * @see #isConsistent()
+	 */
+	public DomainStore(Sudoku sudoku, Set<PropagationRule> rules) {
+		this(BoardLayout.of(sudoku.getSize()), rules);
+		Arrays.fill(domains, fullDomain);
 		initialize(sudoku);
 	}
 
-	public void addDomain(int row, int column, int value) {
-		if (!store.get(row).get(column).contains(value)) {
-			store.get(row).get(column).add(new Integer(value));
+	/**
+	 * Sets up the domains for the givens of a packed board, read right from
+	 * its bytes, and propagates them
+	 * @param board
+	 * @param rules the inference rules to run on changed units
+	 * @see #isConsistent()
+	 */
+	public DomainStore(PackedBoard board, Set<PropagationRule> rules) {
+		this(BoardLayout.of(board.getSize()), rules);
+		Arrays.fill(domains, fullDomain);
+		for (int cell = 0; cell < domains.length; ++cell) {
+			int value = board.getCell(cell);
+			if (value != 0 && !assignGiven(cell / size, cell % size, value))
+				return;
+		}
+		propagateGivens();
+	}
+
+	private DomainStore(BoardLayout layout, Set<PropagationRule> rules) {
+		size = layout.size;
+		cellSize = layout.cellSize;
+		fullDomain = layout.fullDomain();
+		nUnits = layout.nUnits;
+		unitCells = layout.unitCells;
+		cellUnits = layout.cellUnits;
+		this.rules = rules;
+		cheapRules = selectRules(rules, true);
+		strongRules = selectRules(rules, false);
+		domains = new long[layout.nCells];
+		trailCells = new int[layout.nCells * size];
+		trailDomains = new long[trailCells.length];
+		positions = new long[size];
+		fixedQueue = new int[layout.nCells];
+		unitQueue = new int[nUnits];
+		unitQueued = new boolean[nUnits];
+		strongQueue = new int[nUnits];
+		strongQueued = new boolean[nUnits];
+	}
+
+	/**
+	 * Copies the current domains of other; the copy starts with an empty trail
+	 * @param other
+	 */
+	public DomainStore(DomainStore other) {
+		this(BoardLayout.of(other.size), other.rules);
+		System.arraycopy(other.domains, 0, domains, 0, domains.length);
+		wipedOut = other.wipedOut;
+	}
+
+	/**
+	 * Copies the domains other had when mark was taken; the copy starts with
+	 * an empty trail
+	 * @param other
+	 * @param mark taken from other while it was consistent
+	 */
+	DomainStore(DomainStore other, int mark) {
+		this(other);
+		for (int k = other.trailTop - 1; k >= mark; --k) {
+			domains[other.trailCells[k]] = other.trailDomains[k];
+		}
+		wipedOut = false;
+	}
+
+	private static PropagationRule[] selectRules(Set<PropagationRule> rules, boolean cheap) {
+		ArrayList<PropagationRule> selected = new ArrayList<PropagationRule>();
+		for (PropagationRule rule : rules) {
+			if (rule.isCheap() == cheap)
+				selected.add(rule);
 		}
+		return selected.toArray(new PropagationRule[selected.size()]);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of units; rows come first, then columns, then
+	 *         sub-fields
+	 */
+	public int getUnitCount() {
+		return nUnits;
+	}
+
+	/**
+	 * @return the unit (see {@link #getUnitCount()}) in which the last
+	 *         {@link #propagate()} ran into a contradiction, -1 if it did not
+	 *         fail or the unit is not known
+	 */
+	public int getFailedUnit() {
+		return wipedOut ? failedUnit : -1;
 	}
 
+	/**
+	 * @return the inference rules this store runs
+	 */
+	public Set<PropagationRule> getRules() {
+		return rules;
+	}
+
+	public void addDomain(int row, int column, int value) {
+		int index = row * size + column;
+		setDomain(index, domains[index] | 1L << (value - 1));
+	}
+
+	/**
+	 * Removes value from the domain of the cell; the consequences are
+	 * drawn by the next {@link #propagate()}
+	 */
 	public void removeDomain(int row, int column, int value) {
-		if (!this.isDomainSolved(row, column) && store.get(row).get(column).contains(value)) {
-			store.get(row).get(column).remove(new Integer(value));
+		int index = row * size + column;
+		setDomain(index, domains[index] & ~(1L << (value - 1)));
+	}
+
+	/**
+	 * Fixes the cell to value; the consequences are drawn by the next
+	 * {@link #propagate()}
+	 */
+	public void assign(int row, int column, int value) {
+		int index = row * size + column;
+		setDomain(index, domains[index] & 1L << (value - 1));
+	}
+
+	private void setDomain(int index, long domain) {
+		long oldDomain = domains[index];
+		if (oldDomain == domain) {
+			return;
+		}
+		if (trailTop == trailCells.length) {
+			trailCells = Arrays.copyOf(trailCells, 2 * trailCells.length);
+			trailDomains = Arrays.copyOf(trailDomains, 2 * trailDomains.length);
+		}
+		trailCells[trailTop] = index;
+		trailDomains[trailTop++] = oldDomain;
+		removals += Long.bitCount(oldDomain & ~domain);
+		domains[index] = domain;
+
+		if (domain == 0) {
+			wipedOut = true;
+			return;
+		}
+		if (Long.bitCount(domain) == 1) {
+			fixedQueue[fixedTop++] = index;
+		}
+		for (int unit : cellUnits[index]) {
+			if (!unitQueued[unit]) {
+				unitQueued[unit] = true;
+				unitQueue[unitTop++] = unit;
+			}
+			if (strongRules.length > 0 && !strongQueued[unit]) {
+				strongQueued[unit] = true;
+				strongQueue[strongTop++] = unit;
+			}
 		}
 	}
 
-	public boolean isDomainSolved(int row, int column) {
-		boolean result = store.get(row).get(column).size() == 1;
-		return result;
+	/**
+	 * Draws all consequences of the changes made since the last call
+	 * @return false if some domain ran empty or some value has no place
+	 *         left in a unit; the store has to be rolled back then
+	 */
+	public boolean propagate() {
+		failedUnit = -1;
+		while (!wipedOut) {
+			if (fixedTop > 0) {
+				int cell = fixedQueue[--fixedTop];
+				++propagations;
+				removeFromPeers(cell, domains[cell]);
+			} else if (unitTop > 0) {
+				int unit = unitQueue[--unitTop];
+				unitQueued[unit] = false;
+				failedUnit = unit;
+				if (checkUnit(unit)) {
+					applyRules(cheapRules, unit);
+				}
+			} else if (strongTop > 0) {
+				int unit = strongQueue[--strongTop];
+				strongQueued[unit] = false;
+				failedUnit = unit;
+				applyRules(strongRules, unit);
+			} else {
+				return true;
+			}
+		}
+		clearQueues();
+		return false;
 	}
 
-	private void initialize(Sudoku sudoku) {
-		for (int i = 0; i < 9; ++i) {
-			for (int j = 0; j < 9; ++j) {
-				if (!sudoku.isUnassigned(i, j)) {
-					int value = sudoku.get(i, j);
-					store.get(i).get(j).clear();
-					store.get(i).get(j).add(value);
-					updateDomainStoreWithNewFixValue(i, j, value);
+	private void removeFromPeers(int cell, long bit) {
+		for (int unit : cellUnits[cell]) {
+			for (int peer : unitCells[unit]) {
+				if (peer != cell && (domains[peer] & bit) != 0) {
+					setDomain(peer, domains[peer] & ~bit);
+					if (wipedOut) {
+						failedUnit = unit;
+						return;
+					}
 				}
 			}
 		}
 	}
 
-	public void updateDomainStoreWithNewFixValue(int row, int column, int value) {
-		removeValueFromRow(row, value);
-		removeValueFromColumn(column, value);
-		removeValueFromUnit(row, column, value);
+	/**
+	 * Fails the store if some value has no place left in the unit
+	 */
+	private boolean checkUnit(int unit) {
+		long seen = 0;
+		for (int cell : unitCells[unit]) {
+			seen |= domains[cell];
+		}
+		if (seen != fullDomain) {
+			wipedOut = true;
+			return false;
+		}
+		return true;
+	}
 
+	private void applyRules(PropagationRule[] selected, int unit) {
+		for (PropagationRule rule : selected) {
+			if (!rule.appliesTo(this, unit))
+				continue;
+			long before = removals;
+			rule.apply(this, unit);
+			if (removals != before)
+				++ruleHits[rule.ordinal()];
+			if (wipedOut)
+				return;
+		}
 	}
 
-	private void removeValueFromRow(int row, int value) {
-		for (int i = 0; i < 9; ++i) {
-			this.removeDomain(row, i, value);
+	private void clearQueues() {
+		fixedTop = 0;
+		while (unitTop > 0) {
+			unitQueued[unitQueue[--unitTop]] = false;
 		}
+		while (strongTop > 0) {
+			strongQueued[strongQueue[--strongTop]] = false;
+		}
+	}
+
+	// access for the propagation rules
+
+	boolean isRow(int unit) {
+		return unit < size;
 	}
 
-	private void removeValueFromColumn(int column, int value) {
-		for (int i = 0; i < 9; ++i) {
-			this.removeDomain(i, column, value);
+	boolean isColumn(int unit) {
+		return unit >= size && unit < 2 * size;
+	}
+
+	boolean isBox(int unit) {
+		return unit >= 2 * size;
+	}
+
+	int rowOf(int cell) {
+		return cellUnits[cell][0];
+	}
+
+	int columnOf(int cell) {
+		return cellUnits[cell][1];
+	}
+
+	int boxOf(int cell) {
+		return cellUnits[cell][2];
+	}
+
+	boolean isInUnit(int cell, int unit) {
+		return cellUnits[cell][unit / size] == unit;
+	}
+
+	int[] unitCells(int unit) {
+		return unitCells[unit];
+	}
+
+	long domainOf(int cell) {
+		return domains[cell];
+	}
+
+	int[] unitsOf(int cell) {
+		return cellUnits[cell];
+	}
+
+	/**
+	 * @return the number of distinct peers of cell (sharing a row, column or
+	 *         sub-field) that are not fixed yet and still allow a value of mask
+	 */
+	int countOpenPeers(int cell, long mask) {
+		int row = cellUnits[cell][0];
+		int column = cellUnits[cell][1];
+		int count = 0;
+		for (int peer : unitCells[row]) {
+			if (peer != cell && isOpen(peer, mask))
+				++count;
+		}
+		for (int peer : unitCells[column]) {
+			if (peer != cell && isOpen(peer, mask))
+				++count;
 		}
+		// the rest of the sub-field, without the cells counted above
+		for (int peer : unitCells[cellUnits[cell][2]]) {
+			if (cellUnits[peer][0] != row && cellUnits[peer][1] != column && isOpen(peer, mask))
+				++count;
+		}
+		return count;
+	}
+
+	private boolean isOpen(int cell, long mask) {
+		long domain = domains[cell];
+		return (domain & mask) != 0 && (domain & (domain - 1)) != 0;
 	}
 
-	private void removeValueFromUnit(int row, int column, int value) {
-		int unitRow = row / 3;
-		int unitCol = column / 3;
+	/**
+	 * Keeps only the values of mask in the domain of the cell
+	 */
+	void restrict(int cell, long mask) {
+		if (!wipedOut && (domains[cell] & ~mask) != 0)
+			setDomain(cell, domains[cell] & mask);
+	}
 
-		for (int i = unitRow * 3; i < unitRow * 3 + 3; ++i) {
-			for (int j = unitCol * 3; j < unitCol * 3 + 3; ++j) {
-				this.removeDomain(i, j, value);
+	/**
+	 * @return for every value v, a mask of the positions in the unit (index
+	 *         into {@link #unitCells(int)}) where v is still possible; the
+	 *         array is reused by the next call
+	 */
+	long[] valuePositions(int unit) {
+		int[] cells = unitCells[unit];
+		Arrays.fill(positions, 0);
+		for (int p = 0; p < cells.length; ++p) {
+			for (long rest = domains[cells[p]]; rest != 0; rest &= rest - 1) {
+				positions[Long.numberOfTrailingZeros(rest)] |= 1L << p;
 			}
 		}
+		return positions;
+	}
+
+	/**
+	 * @return false if the givens already contradict each other
+	 */
+	public boolean isConsistent() {
+		return !wipedOut;
+	}
+
+	/**
+	 * @return the number of values removed from domains since this store was created
+	 */
+	public long getRemovals() {
+		return removals;
+	}
+
+	/**
+	 * @return the number of fixed cells whose value was removed from their peers
+	 */
+	public long getPropagations() {
+		return propagations;
+	}
+
+	/**
+	 * @return how often rule removed at least one value since this store was created
+	 */
+	public long getRuleHits(PropagationRule rule) {
+		return ruleHits[rule.ordinal()];
+	}
+
+	/**
+	 * @return a marker for the current state to be passed to {@link #undo(int)}
+	 */
+	public int mark() {
+		return trailTop;
+	}
+
+	/**
+	 * Reverts all domain changes made since mark was taken
+	 * @param mark
+	 */
+	public void undo(int mark) {
+		while (trailTop > mark) {
+			--trailTop;
+			domains[trailCells[trailTop]] = trailDomains[trailTop];
+		}
+		clearQueues();
+		wipedOut = false;
+		failedUnit = -1;
+	}
+
+	public boolean isDomainSolved(int row, int column) {
+		return Long.bitCount(domains[row * size + column]) == 1;
+	}
+
+	private void initialize(Sudoku sudoku) {
+		for (int cell = 0; cell < domains.length; ++cell) {
+			if (!sudoku.isUnassigned(cell) && !assignGiven(cell / size, cell % size, sudoku.get(cell)))
+				return;
+		}
+		propagateGivens();
+	}
+
+	/**
+	 * @return false if the value is out of range, the store is wiped out then
+	 */
+	private boolean assignGiven(int i, int j, int value) {
+		if (value < 1 || value > size) {
+			wipedOut = true;
+			return false;
+		}
+		assign(i, j, value);
+		return true;
+	}
+
+	private void propagateGivens() {
+		propagate();
+		// the givens are the bottom of the search, there is nothing to undo below them
+		trailTop = 0;
 	}
 
 	public int getSolutionForVariable(int row, int column) {
 		if (this.isDomainSolved(row, column)) {
-			return store.get(row).get(column).get(0);
+			return Long.numberOfTrailingZeros(domains[row * size + column]) + 1;
 		} else {
 			System.err.println("Invalid Call for Solution for Variable");
 			return 0;
 		}
 	}
-	
-	public boolean checkSingleOccurenceUnit() {
-		for(int i = 0; i < 3; ++i){
-			for(int j = 0; j < 3; ++j){
-				int[] singleOccurenceValue = findSingleOccurenceInUnit(i, j);
-				if(singleOccurenceValue != null){
-					store.get(singleOccurenceValue[0]).get(singleOccurenceValue[1]).clear();
-					store.get(singleOccurenceValue[0]).get(singleOccurenceValue[1]).add(singleOccurenceValue[2]);
-					updateDomainStoreWithNewFixValue(singleOccurenceValue[0], singleOccurenceValue[1], singleOccurenceValue[2]);
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	private int[] findSingleOccurenceInUnit(int unitRow, int unitCol)
-	{
-		// add all possibilities in one array
-		ArrayList<Integer> occurences = new ArrayList<Integer>();
-		for(int i = 0; i < 3; ++i)
-		{
-			for(int j = 0; j < 3; ++j)
-			{	
-				if(this.isDomainSolved(unitRow * 3 + i, unitCol * 3 + j))
-				{
-					continue;
-				}
 
-				occurences.addAll(store.get(unitRow * 3 + i).get(unitCol * 3 + j));
-			}
-		}
-		
-		// check if a value is only possible one time
-		int foundValue = 0;
-		for(int i = 1; i <= 9; ++i)
-		{
-			if(Collections.frequency(occurences, i) == 1)
-			{
-				foundValue = i;
-				break;
-			}
-		}
-		
-		if(foundValue == 0){
-			return null;
-		}
-		
-		// find cell in which the unique value is
-		for(int i = 0; i < 3; ++i){
-			for(int j = 0; j < 3; ++j){				
-				if(store.get(unitRow * 3 + i).get(unitCol * 3 + j).contains(foundValue)){
-					return new int[] {unitRow * 3 + i, unitCol * 3 + j, foundValue};
-				}
-			}
+	/**
+	 * Writes the value of every cell to target; all domains have to be
+	 * down to one value
+	 */
+	void copySolution(Sudoku target) {
+		for (int cell = 0; cell < domains.length; ++cell) {
+			target.put(cell, Long.numberOfTrailingZeros(domains[cell]) + 1);
 		}
-		
-		System.err.println("findSingleOccurenceInUnit: shit hits the fan");
-		return null;
 	}
 
+	/**
+	 * @return row and column of the first cell with the smallest domain
+	 *         above one value, {-1, -1} if every cell is fixed
+	 * @deprecated allocates; use {@link MinDomainSelector#selectCell(DomainStore)}
+	 */
+	@Deprecated
 	public int[] getCellWithSmallestDomain(){
-		int minSize = Integer.MAX_VALUE;
-		int[] pos = new int[] {-1, -1};
-		for(int i = 0; i < 9; ++i){
-			for(int j = 0; j < 9; ++j){
-				if(store.get(i).get(j).size() > 1 && store.get(i).get(j).size() < minSize){
-					minSize = store.get(i).get(j).size();
-					pos = new int[] {i, j};
-				}				
-			}
+		int cell = new MinDomainSelector().selectCell(this);
+		if(cell == -1) {
+			return new int[] {-1, -1};
 		}
-		return pos;
+		return new int[] {cell / size, cell % size};
 	}
-	
+
+	/**
+	 * Raw bitmask of the domain of a cell; bit (v-1) is set iff v is still possible
+	 */
+	public long getDomainMask(int row, int column) {
+		return domains[row * size + column];
+	}
+
 	public ArrayList<Integer> getDomainForCell(int row, int column){
-		return store.get(row).get(column);
+		long domain = domains[row * size + column];
+		ArrayList<Integer> values = new ArrayList<Integer>(Long.bitCount(domain));
+		for (long rest = domain; rest != 0; rest &= rest - 1) {
+			values.add(Long.numberOfTrailingZeros(rest) + 1);
+		}
+		return values;
 	}
 }
@@ -0,0 +1,59 @@
+package isse;
+
+/**
+ * A generated puzzle with its unique solution and its grade, see
+ * {@link SudokuGenerator}
+ *
+ */
+public class GradedPuzzle {
+	private final Sudoku puzzle;
+	private final Sudoku solution;
+	private final Difficulty difficulty;
+	private final StatisticsSnapshot statistics;
+
+	public GradedPuzzle(Sudoku puzzle, Sudoku solution, Difficulty difficulty, StatisticsSnapshot statistics) {
+		this.puzzle = puzzle;
+		this.solution = solution;
+		this.difficulty = difficulty;
+		this.statistics = statistics;
+	}
+
+	public Sudoku getPuzzle() {
+		return puzzle;
+	}
+
+	public Sudoku getSolution() {
+		return solution;
+	}
+
+	public Difficulty getDifficulty() {
+		return difficulty;
+	}
+
+	/**
+	 * @return the counters of the solve that decided the grade: the rule
+	 *         hits for the propagation levels, the search effort for
+	 *         {@link Difficulty#EXPERT}
+	 */
+	public StatisticsSnapshot getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return the number of filled cells
+	 */
+	public int getGivens() {
+		int givens = 0;
+		int size = puzzle.getSize();
+		for (int cell = 0; cell < size * size; ++cell) {
+			if (!puzzle.isUnassigned(cell))
+				++givens;
+		}
+		return givens;
+	}
+
+	@Override
+	public String toString() {
+		return difficulty + " with " + getGivens() + " givens\n" + puzzle;
+	}
+}
@@ -0,0 +1,107 @@
+package isse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations in nanoseconds
+ *
+ * Buckets are log-linear: every power of two is split into SUB_BUCKETS
+ * equally wide buckets, so a recorded value is known up to about 12%
+ * while the whole range of a long fits into a few hundred counters
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+	}
+
+	/**
+	 * Adds all values recorded in other
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int b = 0; b < BUCKETS; ++b) {
+			long c = other.counts.get(b);
+			if (c != 0)
+				counts.addAndGet(b, c);
+		}
+	}
+
+	/**
+	 * @param earlier a copy of this histogram taken before
+	 * @return the values recorded since earlier was taken
+	 */
+	public LatencyHistogram since(LatencyHistogram earlier) {
+		LatencyHistogram difference = new LatencyHistogram();
+		for (int b = 0; b < BUCKETS; ++b) {
+			long c = counts.get(b) - earlier.counts.get(b);
+			if (c != 0)
+				difference.counts.set(b, c);
+		}
+		return difference;
+	}
+
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.merge(this);
+		return copy;
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int b = 0; b < BUCKETS; ++b)
+			count += counts.get(b);
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket holding the percentile, 0 if empty
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; ++b) {
+			seen += counts.get(b);
+			if (seen >= rank)
+				return upperBoundOf(b);
+		}
+		return upperBoundOf(BUCKETS - 1);
+	}
+
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); // >= SUB_BITS
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lower + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", getCount(), millis(getPercentile(50)),
+				millis(getPercentile(90)), millis(getPercentile(99)), millis(getPercentile(100)));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,41 @@
+package isse;
+
+import java.util.Random;
+
+/**
+ * Tries first the value that the fewest open peers of the cell still
+ * allow, so it takes the fewest options away from the rest of the board
+ *
+ */
+public class LeastConstrainingValue implements ValueOrdering {
+	private final Random random;
+
+	public LeastConstrainingValue() {
+		this(null);
+	}
+
+	/**
+	 * @param random picks uniformly among ties; null for the smallest value
+	 */
+	public LeastConstrainingValue(Random random) {
+		this.random = random;
+	}
+
+	@Override
+	public int nextValue(DomainStore store, int cell, long untried) {
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		int ties = 0;
+		for (long rest = untried; rest != 0; rest &= rest - 1) {
+			int count = store.countOpenPeers(cell, rest & -rest);
+			if (count < bestCount) {
+				bestCount = count;
+				best = Long.numberOfTrailingZeros(rest) + 1;
+				ties = 1;
+			} else if (count == bestCount && random != null && random.nextInt(++ties) == 0) {
+				best = Long.numberOfTrailingZeros(rest) + 1;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,191 @@
+package isse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams puzzles out of a file that holds many of them, either one per
+ * line as size*size characters or as concatenated .sdk blocks of size
+ * lines each
+ *
+ * The file is memory-mapped window by window and parsed right from the
+ * buffer: every size*size cell characters ({@link Sudoku#SYMBOLS}, '.' or
+ * '0' for empty) make one puzzle, whitespace and line breaks are skipped
+ * and lines starting with '#' between puzzles are treated as comments
+ *
+ */
+public class MappedSudokuReader implements Iterator<Sudoku>, Closeable {
+
+	protected final int size;
+	// room for one puzzle with all its line breaks and a comment line
+	private final int maxRecord;
+	private static final long DEFAULT_WINDOW = 64L << 20;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long windowSize;
+	private MappedByteBuffer buffer;
+	private long bufferStart;
+	private Sudoku next;
+
+	public MappedSudokuReader(File input) throws IOException {
+		this(input, 9, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param input
+	 * @param size number of rows of every puzzle in the file, at most
+	 *        {@link Sudoku#SYMBOLS}.length()
+	 * @throws IOException
+	 */
+	public MappedSudokuReader(File input, int size) throws IOException {
+		this(input, size, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param input
+	 * @param size number of rows of every puzzle in the file
+	 * @param windowSize number of bytes mapped at a time
+	 * @throws IOException
+	 */
+	public MappedSudokuReader(File input, int size, long windowSize) throws IOException {
+		BoardLayout.of(size);
+		if (size > Sudoku.SYMBOLS.length())
+			throw new IllegalArgumentException("No symbols for board size " + size);
+		this.size = size;
+		this.maxRecord = 2 * size * size + 4096;
+		// a mapped buffer holds at most Integer.MAX_VALUE bytes
+		this.windowSize = Math.min(Math.max(windowSize, maxRecord), Integer.MAX_VALUE);
+		this.file = new RandomAccessFile(input, "r");
+		try {
+			this.channel = file.getChannel();
+			this.fileSize = channel.size();
+			map(0);
+			next = parseNext();
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public Sudoku next() {
+		if (next == null)
+			throw new NoSuchElementException();
+		Sudoku current = next;
+		try {
+			next = parseNext();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read past puzzle", e);
+		}
+		return current;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return the remaining puzzles as a sequential stream; closing it
+	 *         closes this reader
+	 */
+	public Stream<Sudoku> stream() {
+		Spliterator<Sudoku> puzzles = Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(puzzles, false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		next = null;
+		buffer = null;
+		file.close();
+	}
+
+	private void map(long position) throws IOException {
+		long length = Math.min(windowSize, fileSize - position);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		bufferStart = position;
+	}
+
+	/**
+	 * Moves the window forward if fewer than maxRecord bytes are left in it
+	 * and the file goes on
+	 */
+	private void ensureRecord() throws IOException {
+		if (buffer.remaining() < maxRecord && bufferStart + buffer.limit() < fileSize) {
+			map(bufferStart + buffer.position());
+		}
+	}
+
+	private Sudoku parseNext() throws IOException {
+		// skip whitespace and comment lines in front of the puzzle; they may
+		// run longer than a window, so it moves on while skipping
+		boolean inComment = false;
+		while (true) {
+			ensureRecord();
+			if (!buffer.hasRemaining())
+				return null;
+			byte c = buffer.get(buffer.position());
+			if (inComment) {
+				inComment = c != '\n';
+			} else if (c == '#') {
+				inComment = true;
+			} else if (!isWhitespace(c)) {
+				break;
+			}
+			buffer.get();
+		}
+
+		Sudoku sudoku = new Sudoku(size);
+		int cell = 0;
+		while (cell < size * size) {
+			if (!buffer.hasRemaining())
+				ensureRecord();
+			if (!buffer.hasRemaining())
+				throw new IllegalStateException("Incomplete puzzle at end of file");
+			byte c = buffer.get();
+			if (isWhitespace(c))
+				continue;
+			int value = Sudoku.symbolValue((char) c);
+			if (value == 0) {
+				sudoku.putEmpty(cell);
+			} else if (value > 0 && value <= size) {
+				sudoku.put(cell, value);
+			} else {
+				throw new IllegalStateException("Unexpected character '" + (char) c + "' at byte "
+						+ (bufferStart + buffer.position() - 1));
+			}
+			++cell;
+		}
+		return sudoku;
+	}
+
+	private static boolean isWhitespace(byte c) {
+		return c == '\n' || c == '\r' || c == ' ' || c == '\t';
+	}
+}
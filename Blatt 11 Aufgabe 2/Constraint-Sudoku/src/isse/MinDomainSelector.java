@@ -0,0 +1,75 @@
+package isse;
+
+import java.util.Random;
+
+/**
+ * Branches on a cell with the fewest values left (MRV, "fail first")
+ *
+ * Ties go to the first cell in row order unless the degree or a random
+ * choice breaks them; the degree of a cell is the number of open cells it
+ * shares a unit with, so choosing the largest one constrains the most
+ *
+ */
+public class MinDomainSelector implements VariableSelector {
+	private final boolean degreeTieBreak;
+	private final Random random;
+
+	/**
+	 * The first cell with the smallest domain
+	 */
+	public MinDomainSelector() {
+		this(false, null);
+	}
+
+	/**
+	 * @param degreeTieBreak prefer cells with more open peers among the smallest domains
+	 * @param random picks uniformly among the remaining ties; null for the first one
+	 */
+	public MinDomainSelector(boolean degreeTieBreak, Random random) {
+		this.degreeTieBreak = degreeTieBreak;
+		this.random = random;
+	}
+
+	@Override
+	public int selectCell(DomainStore store) {
+		int nCells = store.size * store.size;
+		if (!degreeTieBreak && random == null) {
+			return firstSmallest(store, nCells);
+		}
+		int minSize = Integer.MAX_VALUE;
+		int maxDegree = -1;
+		int best = -1;
+		int ties = 0;
+		for (int cell = 0; cell < nCells; ++cell) {
+			int domainSize = Long.bitCount(store.domainOf(cell));
+			if (domainSize < 2 || domainSize > minSize)
+				continue;
+			int degree = degreeTieBreak ? store.countOpenPeers(cell, -1L) : 0;
+			if (domainSize < minSize || degree > maxDegree) {
+				minSize = domainSize;
+				maxDegree = degree;
+				best = cell;
+				ties = 1;
+			} else if (degree == maxDegree && random != null && random.nextInt(++ties) == 0) {
+				best = cell;
+			}
+		}
+		return best;
+	}
+
+	private static int firstSmallest(DomainStore store, int nCells) {
+		int minSize = Integer.MAX_VALUE;
+		int minIndex = -1;
+		for (int cell = 0; cell < nCells; ++cell) {
+			int domainSize = Long.bitCount(store.domainOf(cell));
+			if (domainSize > 1 && domainSize < minSize) {
+				minSize = domainSize;
+				minIndex = cell;
+				if (domainSize == 2) {
+					break; // cannot get any smaller
+				}
+			}
+		}
+		return minIndex;
+	}
+}
@@ -0,0 +1,204 @@
+package isse;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A board packed into as few bits per cell as its values need: 0 for an
+ * empty cell, the value otherwise. A 9x9 board takes 4 bits per cell, 41
+ * bytes in all; 16x16 and 25x25 take 5 bits, 64x64 boards 7
+ *
+ * Cell (i, j) has index i*size + j and occupies the bits from index*bits
+ * on, counted from the lowest bit of the first byte, so for 9x9 boards the
+ * even cells are the low nibbles. The board is a view on a byte array at
+ * an offset, so many boards can share one array and a record read from a
+ * {@link PackedSudokuFile} is used as it is, without inflating it to a
+ * {@link Sudoku}; {@link DomainStore} reads it directly
+ *
+ */
+public final class PackedBoard {
+	private final int size;
+	private final int bits;
+	private final int mask;
+	private final byte[] data;
+	private final int offset;
+
+	/**
+	 * An empty board on an array of its own
+	 * @param size number of rows, a square number up to {@link Sudoku#MAX_SIZE}
+	 */
+	public PackedBoard(int size) {
+		this(size, new byte[recordBytes(size)], 0);
+	}
+
+	/**
+	 * A view on the {@link #recordBytes(int)} bytes of data from offset on;
+	 * changes go through to the array
+	 * @param size
+	 * @param data
+	 * @param offset
+	 */
+	public PackedBoard(int size, byte[] data, int offset) {
+		BoardLayout.of(size);
+		if (offset < 0 || offset + recordBytes(size) > data.length)
+			throw new IndexOutOfBoundsException("No board of size " + size + " at offset " + offset);
+		this.size = size;
+		this.bits = bitsPerCell(size);
+		this.mask = (1 << bits) - 1;
+		this.data = data;
+		this.offset = offset;
+	}
+
+	/**
+	 * @return the givens of sudoku packed on an array of their own
+	 */
+	public static PackedBoard of(Sudoku sudoku) {
+		PackedBoard packed = new PackedBoard(sudoku.getSize());
+		packed.copyFrom(sudoku);
+		return packed;
+	}
+
+	/**
+	 * @return the number of bits a cell of a board with size values takes
+	 */
+	public static int bitsPerCell(int size) {
+		return 32 - Integer.numberOfLeadingZeros(size);
+	}
+
+	/**
+	 * @return the number of bytes of a board with size rows
+	 */
+	public static int recordBytes(int size) {
+		return (size * size * bitsPerCell(size) + 7) / 8;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the value of cell (i, j), -1 if it is empty like in {@link Sudoku}
+	 */
+	public int get(int i, int j) {
+		int value = getCell(i * size + j);
+		return value == 0 ? -1 : value;
+	}
+
+	public boolean isUnassigned(int i, int j) {
+		return getCell(i * size + j) == 0;
+	}
+
+	public void put(int i, int j, int value) {
+		if (value < 1 || value > size)
+			throw new IllegalArgumentException("Value " + value + " out of range");
+		setCell(i * size + j, value);
+	}
+
+	public void putEmpty(int i, int j) {
+		setCell(i * size + j, 0);
+	}
+
+	/**
+	 * @param cell index i*size + j
+	 * @return the raw value of the cell, 0 if it is empty
+	 */
+	int getCell(int cell) {
+		int bit = cell * bits;
+		int at = offset + (bit >>> 3);
+		int shift = bit & 7;
+		int word = data[at] & 0xFF;
+		// bits up to 7 span two bytes at most
+		if (shift + bits > 8)
+			word |= (data[at + 1] & 0xFF) << 8;
+		return (word >>> shift) & mask;
+	}
+
+	private void setCell(int cell, int value) {
+		int bit = cell * bits;
+		int at = offset + (bit >>> 3);
+		int shift = bit & 7;
+		int word = data[at] & 0xFF;
+		if (shift + bits > 8)
+			word |= (data[at + 1] & 0xFF) << 8;
+		word = word & ~(mask << shift) | value << shift;
+		data[at] = (byte) word;
+		if (shift + bits > 8)
+			data[at + 1] = (byte) (word >>> 8);
+	}
+
+	/**
+	 * Overwrites this board with the cells of sudoku
+	 */
+	public void copyFrom(Sudoku sudoku) {
+		if (sudoku.getSize() != size)
+			throw new IllegalArgumentException("Board size " + sudoku.getSize() + " instead of " + size);
+		for (int cell = 0; cell < size * size; ++cell) {
+			int value = sudoku.get(cell);
+			if (value != -1 && (value < 1 || value > size))
+				throw new IllegalArgumentException("Value " + value + " out of range");
+			setCell(cell, value == -1 ? 0 : value);
+		}
+	}
+
+	/**
+	 * @return the board inflated to a new {@link Sudoku}
+	 */
+	public Sudoku toSudoku() {
+		Sudoku sudoku = new Sudoku(size);
+		for (int cell = 0; cell < size * size; ++cell) {
+			int value = getCell(cell);
+			if (value == 0)
+				sudoku.putEmpty(cell);
+			else
+				sudoku.put(cell, value);
+		}
+		return sudoku;
+	}
+
+	/**
+	 * Overwrites this board with the packed bytes at position of source;
+	 * uses absolute gets only, so source may be shared between threads
+	 */
+	void copyFrom(ByteBuffer source, int position) {
+		int length = recordBytes(size);
+		for (int k = 0; k < length; ++k) {
+			data[offset + k] = source.get(position + k);
+		}
+	}
+
+	/**
+	 * Copies the packed bytes to target at position
+	 */
+	public void copyTo(byte[] target, int position) {
+		System.arraycopy(data, offset, target, position, recordBytes(size));
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof PackedBoard))
+			return false;
+		PackedBoard board = (PackedBoard) other;
+		if (board.size != size)
+			return false;
+		int length = recordBytes(size);
+		for (int k = 0; k < length; ++k) {
+			if (data[offset + k] != board.data[board.offset + k])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = size;
+		int length = recordBytes(size);
+		for (int k = 0; k < length; ++k) {
+			h = 31 * h + data[offset + k];
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return toSudoku().toString();
+	}
+}
@@ -0,0 +1,161 @@
+package isse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Random access to a file of packed puzzles, see {@link PackedSudokuWriter}
+ *
+ * The file starts with a {@link #HEADER_BYTES} header: the magic "SDKP", a
+ * format version, the board size, a flag byte (1 if every puzzle is
+ * followed by its solution) and a reserved byte. Then come fixed size
+ * records of one {@link PackedBoard} each, or two with solutions, so
+ * record k sits at HEADER_BYTES + k * recordBytes and the number of records
+ * follows from the file length.
+ *
+ * The whole file is memory-mapped in windows of whole records below 1 GB,
+ * so files with hundreds of millions of puzzles need no heap. Reads only
+ * use absolute positions and are safe from several threads
+ *
+ */
+public class PackedSudokuFile implements Closeable, Iterable<PackedBoard> {
+	public static final int HEADER_BYTES = 8;
+	static final byte[] MAGIC = { 'S', 'D', 'K', 'P' };
+	static final byte VERSION = 1;
+	static final byte WITH_SOLUTIONS = 1;
+	private static final long MAX_WINDOW = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final int size;
+	private final boolean withSolutions;
+	private final int boardBytes;
+	private final int recordBytes;
+	private final long count;
+	private final int recordsPerWindow;
+	private final MappedByteBuffer[] windows;
+
+	public PackedSudokuFile(File input) throws IOException {
+		file = new RandomAccessFile(input, "r");
+		try {
+			byte[] header = new byte[HEADER_BYTES];
+			if (file.length() < HEADER_BYTES)
+				throw new IOException(input + " is no packed puzzle file");
+			file.readFully(header);
+			for (int k = 0; k < MAGIC.length; ++k) {
+				if (header[k] != MAGIC[k])
+					throw new IOException(input + " is no packed puzzle file");
+			}
+			if (header[4] != VERSION)
+				throw new IOException(input + " has unknown format version " + header[4]);
+			size = header[5] & 0xFF;
+			withSolutions = (header[6] & WITH_SOLUTIONS) != 0;
+			BoardLayout.of(size);
+			boardBytes = PackedBoard.recordBytes(size);
+			recordBytes = withSolutions ? 2 * boardBytes : boardBytes;
+			// a partly written last record is ignored
+			count = (file.length() - HEADER_BYTES) / recordBytes;
+
+			recordsPerWindow = (int) Math.max(1, MAX_WINDOW / recordBytes);
+			windows = new MappedByteBuffer[(int) ((count + recordsPerWindow - 1) / recordsPerWindow)];
+			FileChannel channel = file.getChannel();
+			for (int w = 0; w < windows.length; ++w) {
+				long first = (long) w * recordsPerWindow;
+				long records = Math.min(recordsPerWindow, count - first);
+				windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * recordBytes,
+						records * recordBytes);
+			}
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public boolean hasSolutions() {
+		return withSolutions;
+	}
+
+	/**
+	 * @return the number of records
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @return the k-th puzzle, copied to an array of its own
+	 */
+	public PackedBoard puzzle(long k) {
+		PackedBoard board = new PackedBoard(size);
+		read(k, 0, board);
+		return board;
+	}
+
+	/**
+	 * @return the solution stored with the k-th puzzle
+	 * @throws IllegalStateException if the file has no solutions
+	 */
+	public PackedBoard solution(long k) {
+		if (!withSolutions)
+			throw new IllegalStateException("The file holds no solutions");
+		PackedBoard board = new PackedBoard(size);
+		read(k, boardBytes, board);
+		return board;
+	}
+
+	/**
+	 * Copies the k-th puzzle into target, e.g., to walk the file without
+	 * allocating
+	 * @param k
+	 * @param target a board of the same size
+	 */
+	public void readPuzzle(long k, PackedBoard target) {
+		read(k, 0, target);
+	}
+
+	private void read(long k, int within, PackedBoard target) {
+		if (k < 0 || k >= count)
+			throw new IndexOutOfBoundsException("Record " + k + " of " + count);
+		if (target.getSize() != size)
+			throw new IllegalArgumentException("Board size " + target.getSize() + " instead of " + size);
+		MappedByteBuffer window = windows[(int) (k / recordsPerWindow)];
+		int position = (int) (k % recordsPerWindow) * recordBytes + within;
+		target.copyFrom(window, position);
+	}
+
+	/**
+	 * @return the puzzles in file order, each on an array of its own
+	 */
+	@Override
+	public Iterator<PackedBoard> iterator() {
+		return new Iterator<PackedBoard>() {
+			private long next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			@Override
+			public PackedBoard next() {
+				if (next >= count)
+					throw new NoSuchElementException();
+				return puzzle(next++);
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
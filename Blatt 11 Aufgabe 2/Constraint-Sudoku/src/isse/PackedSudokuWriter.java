@@ -0,0 +1,115 @@
+package isse;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes puzzles, optionally with their solutions, as fixed size packed
+ * records; the format is described at {@link PackedSudokuFile}
+ *
+ */
+public class PackedSudokuWriter implements Closeable {
+	private final OutputStream out;
+	private final int size;
+	private final boolean withSolutions;
+	private final byte[] record;
+	private final PackedBoard puzzleView;
+	private final PackedBoard solutionView;
+	private long written = 0;
+
+	/**
+	 * Creates or truncates output
+	 * @param output
+	 * @param size number of rows of every puzzle
+	 * @param withSolutions true if every puzzle is written with its solution
+	 * @throws IOException
+	 */
+	public PackedSudokuWriter(File output, int size, boolean withSolutions) throws IOException {
+		BoardLayout.of(size);
+		this.size = size;
+		this.withSolutions = withSolutions;
+		int boardBytes = PackedBoard.recordBytes(size);
+		record = new byte[withSolutions ? 2 * boardBytes : boardBytes];
+		puzzleView = new PackedBoard(size, record, 0);
+		solutionView = withSolutions ? new PackedBoard(size, record, boardBytes) : null;
+		out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16);
+		byte[] header = new byte[PackedSudokuFile.HEADER_BYTES];
+		System.arraycopy(PackedSudokuFile.MAGIC, 0, header, 0, PackedSudokuFile.MAGIC.length);
+		header[4] = PackedSudokuFile.VERSION;
+		header[5] = (byte) size;
+		header[6] = withSolutions ? PackedSudokuFile.WITH_SOLUTIONS : 0;
+		out.write(header);
+	}
+
+	/**
+	 * Appends a puzzle to a file without solutions
+	 */
+	public void write(Sudoku puzzle) throws IOException {
+		if (withSolutions)
+			throw new IllegalStateException("Every puzzle needs its solution in this file");
+		puzzleView.copyFrom(puzzle);
+		flushRecord();
+	}
+
+	/**
+	 * Appends a puzzle and its solution to a file with solutions
+	 */
+	public void write(Sudoku puzzle, Sudoku solution) throws IOException {
+		if (!withSolutions)
+			throw new IllegalStateException("The file holds no solutions");
+		puzzleView.copyFrom(puzzle);
+		solutionView.copyFrom(solution);
+		flushRecord();
+	}
+
+	/**
+	 * Appends a packed puzzle to a file without solutions
+	 */
+	public void write(PackedBoard puzzle) throws IOException {
+		if (withSolutions)
+			throw new IllegalStateException("Every puzzle needs its solution in this file");
+		checkSize(puzzle);
+		puzzle.copyTo(record, 0);
+		flushRecord();
+	}
+
+	/**
+	 * Appends all puzzles of a textual source, e.g., a
+	 * {@link MappedSudokuReader}, to a file without solutions
+	 * @return the number of puzzles written
+	 */
+	public long writeAll(Iterator<Sudoku> puzzles) throws IOException {
+		long before = written;
+		while (puzzles.hasNext()) {
+			write(puzzles.next());
+		}
+		return written - before;
+	}
+
+	private void checkSize(PackedBoard board) {
+		if (board.getSize() != size)
+			throw new IllegalArgumentException("Board size " + board.getSize() + " instead of " + size);
+	}
+
+	private void flushRecord() throws IOException {
+		out.write(record);
+		++written;
+	}
+
+	/**
+	 * @return the number of records written so far
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,184 @@
+package isse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Races several solvers on the same puzzle and returns the first answer,
+ * cancelling the others; no single strategy is fastest on every puzzle
+ *
+ * Every engine is created once by its factory with its own stats object and
+ * runs on the shared executor. A solve waits for the losers to notice the
+ * cancellation, so the engines are idle again when it returns; the
+ * portfolio itself is not thread-safe, use one per thread like any solver.
+ * The executor must not be the one the portfolio runs on, or the engines
+ * may wait for a free thread forever
+ *
+ */
+public class PortfolioSolver implements Solver {
+	private final StatisticsObject stats;
+	private final List<Solver> engines;
+	private final List<StatisticsObject> engineStats;
+	private final int[] wins;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Runs the engines on daemon threads of its own, one per engine
+	 * @param stats receives the counters of all engines
+	 * @param factories
+	 */
+	public PortfolioSolver(StatisticsObject stats, List<SolverFactory> factories) {
+		this(stats, factories, Executors.newFixedThreadPool(factories.size(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "portfolio-engine");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+	/**
+	 * @param stats receives the counters of all engines
+	 * @param factories
+	 * @param executor runs the engines; with fewer threads than engines,
+	 *        some only start once others are done
+	 */
+	public PortfolioSolver(StatisticsObject stats, List<SolverFactory> factories, ExecutorService executor) {
+		this(stats, factories, executor, false);
+	}
+
+	private PortfolioSolver(StatisticsObject stats, List<SolverFactory> factories, ExecutorService executor,
+			boolean ownsExecutor) {
+		if (factories.isEmpty())
+			throw new IllegalArgumentException("A portfolio needs at least one engine");
+		this.stats = stats;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		engines = new ArrayList<Solver>(factories.size());
+		engineStats = new ArrayList<StatisticsObject>(factories.size());
+		for (SolverFactory factory : factories) {
+			StatisticsObject own = new StatisticsObject();
+			engineStats.add(own);
+			engines.add(factory.createSolver(own));
+		}
+		wins = new int[factories.size()];
+	}
+
+	@Override
+	public StatisticsObject getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return the counters of the engine created by the k-th factory
+	 */
+	public StatisticsObject getEngineStats(int k) {
+		return engineStats.get(k);
+	}
+
+	/**
+	 * @return how often the engine created by the k-th factory answered first
+	 */
+	public int getWins(int k) {
+		return wins[k];
+	}
+
+	@Override
+	public Sudoku solve(Sudoku input) {
+		return solve(input, CancellationToken.NONE).getSolution();
+	}
+
+	/**
+	 * The first engine that finds a solution or proves there is none wins;
+	 * the result is TIMED_OUT only if token stops all of them. Its counters
+	 * are those of the winner
+	 */
+	@Override
+	public SolveResult solve(final Sudoku input, CancellationToken token) {
+		final CancellationToken race = token.child();
+		CompletionService<SolveResult> completion = new ExecutorCompletionService<SolveResult>(executor);
+		List<Future<SolveResult>> running = new ArrayList<Future<SolveResult>>(engines.size());
+		for (final Solver engine : engines) {
+			running.add(completion.submit(new Callable<SolveResult>() {
+				@Override
+				public SolveResult call() {
+					return engine.solve(input, race);
+				}
+			}));
+		}
+
+		SolveResult answer = null;
+		SolveResult last = null;
+		boolean interrupted = false;
+		for (int done = 0; done < running.size(); ++done) {
+			Future<SolveResult> finished;
+			try {
+				finished = completion.take();
+				last = finished.get();
+			} catch (InterruptedException e) {
+				// stop the engines, but still wait for them to be idle
+				interrupted = true;
+				race.cancel();
+				--done;
+				continue;
+			} catch (ExecutionException e) {
+				race.cancel();
+				awaitAll(running);
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+			stats.merge(last.getStatistics());
+			if (answer == null && last.getStatus() != SolveResult.Status.TIMED_OUT) {
+				answer = last;
+				race.cancel();
+				++wins[running.indexOf(finished)];
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return answer != null ? answer : last;
+	}
+
+	/**
+	 * Waits until every engine has stopped, whatever the outcome
+	 */
+	private static void awaitAll(List<Future<SolveResult>> running) {
+		boolean interrupted = false;
+		for (Future<SolveResult> future : running) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stops the engine threads if the portfolio created them
+	 */
+	public void shutdown() {
+		if (ownsExecutor)
+			executor.shutdown();
+	}
+}
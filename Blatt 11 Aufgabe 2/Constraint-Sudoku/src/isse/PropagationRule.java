@@ -0,0 +1,255 @@
+package isse;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Inference rules the {@link DomainStore} can run on a unit (row, column or
+ * sub-field) whose domains changed; removing a fixed value from its peers
+ * always happens and is not listed here
+ *
+ * All rules work on bitmasks: domains are value masks, and for the subset
+ * rules the positions of a value inside the unit form a mask, too
+ *
+ */
+public enum PropagationRule {
+
+	/** a value with one place left in a row goes there */
+	HIDDEN_SINGLE_ROW(true) {
+		@Override
+		boolean appliesTo(DomainStore store, int unit) {
+			return store.isRow(unit);
+		}
+
+		@Override
+		void apply(DomainStore store, int unit) {
+			hiddenSingles(store, unit);
+		}
+	},
+	/** a value with one place left in a column goes there */
+	HIDDEN_SINGLE_COLUMN(true) {
+		@Override
+		boolean appliesTo(DomainStore store, int unit) {
+			return store.isColumn(unit);
+		}
+
+		@Override
+		void apply(DomainStore store, int unit) {
+			hiddenSingles(store, unit);
+		}
+	},
+	/** a value with one place left in a sub-field goes there */
+	HIDDEN_SINGLE_BOX(true) {
+		@Override
+		boolean appliesTo(DomainStore store, int unit) {
+			return store.isBox(unit);
+		}
+
+		@Override
+		void apply(DomainStore store, int unit) {
+			hiddenSingles(store, unit);
+		}
+	},
+	/** two cells with the same two values take them from the rest of the unit */
+	NAKED_PAIR(false) {
+		@Override
+		void apply(DomainStore store, int unit) {
+			nakedSubsets(store, unit, 2);
+		}
+	},
+	/** three cells with only three values between them take them from the rest of the unit */
+	NAKED_TRIPLE(false) {
+		@Override
+		void apply(DomainStore store, int unit) {
+			nakedSubsets(store, unit, 3);
+		}
+	},
+	/** two values that fit only into the same two cells clear those cells of all other values */
+	HIDDEN_PAIR(false) {
+		@Override
+		void apply(DomainStore store, int unit) {
+			int[] cells = store.unitCells(unit);
+			long[] positions = store.valuePositions(unit);
+			for (int a = 0; a < positions.length; ++a) {
+				if (Long.bitCount(positions[a]) != 2)
+					continue;
+				for (int b = a + 1; b < positions.length; ++b) {
+					if (positions[b] == positions[a]) {
+						long pair = (1L << a) | (1L << b);
+						for (long places = positions[a]; places != 0; places &= places - 1) {
+							store.restrict(cells[Long.numberOfTrailingZeros(places)], pair);
+						}
+					}
+				}
+			}
+		}
+	},
+	/**
+	 * a value that fits into a sub-field only along one row (column) cannot
+	 * be anywhere else in that row (column)
+	 */
+	POINTING(false) {
+		@Override
+		boolean appliesTo(DomainStore store, int unit) {
+			return store.isBox(unit);
+		}
+
+		@Override
+		void apply(DomainStore store, int unit) {
+			int[] cells = store.unitCells(unit);
+			long[] positions = store.valuePositions(unit);
+			int cellSize = store.cellSize;
+			for (int v = 0; v < positions.length; ++v) {
+				long places = positions[v];
+				if (Long.bitCount(places) < 2)
+					continue;
+				int first = Long.numberOfTrailingZeros(places);
+				int last = 63 - Long.numberOfLeadingZeros(places);
+				if (first / cellSize == last / cellSize) { // one row of the sub-field
+					removeOutside(store, store.rowOf(cells[first]), unit, v);
+				} else if (sameBoxColumn(places, first % cellSize, cellSize)) {
+					removeOutside(store, store.columnOf(cells[first]), unit, v);
+				}
+			}
+		}
+	},
+	/**
+	 * a value that fits into a row (column) only within one sub-field cannot
+	 * be anywhere else in that sub-field
+	 */
+	BOX_LINE_REDUCTION(false) {
+		@Override
+		boolean appliesTo(DomainStore store, int unit) {
+			return !store.isBox(unit);
+		}
+
+		@Override
+		void apply(DomainStore store, int unit) {
+			int[] cells = store.unitCells(unit);
+			long[] positions = store.valuePositions(unit);
+			int cellSize = store.cellSize;
+			for (int v = 0; v < positions.length; ++v) {
+				long places = positions[v];
+				if (Long.bitCount(places) < 2)
+					continue;
+				int first = Long.numberOfTrailingZeros(places);
+				int last = 63 - Long.numberOfLeadingZeros(places);
+				if (first / cellSize == last / cellSize) {
+					removeOutside(store, store.boxOf(cells[first]), unit, v);
+				}
+			}
+		}
+	};
+
+	/**
+	 * The rules a store uses unless told otherwise; the others prune more
+	 * branches on hard puzzles but cost more time per node than they save
+	 */
+	public static final Set<PropagationRule> DEFAULT = Collections
+			.unmodifiableSet(EnumSet.of(HIDDEN_SINGLE_ROW, HIDDEN_SINGLE_COLUMN, HIDDEN_SINGLE_BOX, POINTING));
+
+	private final boolean cheap;
+
+	private PropagationRule(boolean cheap) {
+		this.cheap = cheap;
+	}
+
+	/**
+	 * Cheap rules run as soon as a unit changes, the others only once the
+	 * cheap ones have nothing left to do
+	 */
+	boolean isCheap() {
+		return cheap;
+	}
+
+	boolean appliesTo(DomainStore store, int unit) {
+		return true;
+	}
+
+	/**
+	 * Narrows domains of the unit (or of cells related to it) through the
+	 * store, which queues the consequences
+	 */
+	abstract void apply(DomainStore store, int unit);
+
+	private static void hiddenSingles(DomainStore store, int unit) {
+		int[] cells = store.unitCells(unit);
+		long seenOnce = 0;
+		long seenTwice = 0;
+		// values of fixed cells are single, too, but there is nothing to do
+		long fixed = 0;
+		for (int cell : cells) {
+			long domain = store.domainOf(cell);
+			seenTwice |= seenOnce & domain;
+			seenOnce |= domain;
+			if ((domain & (domain - 1)) == 0)
+				fixed |= domain;
+		}
+		for (long singles = seenOnce & ~seenTwice & ~fixed; singles != 0; singles &= singles - 1) {
+			long bit = Long.lowestOneBit(singles);
+			for (int cell : cells) {
+				if ((store.domainOf(cell) & bit) != 0) {
+					store.restrict(cell, bit);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds k cells whose domains together hold exactly k values
+	 */
+	private static void nakedSubsets(DomainStore store, int unit, int k) {
+		int[] cells = store.unitCells(unit);
+		// candidates for the subset: open cells with at most k values
+		long open = 0;
+		for (int p = 0; p < cells.length; ++p) {
+			int n = Long.bitCount(store.domainOf(cells[p]));
+			if (n >= 2 && n <= k)
+				open |= 1L << p;
+		}
+		if (Long.bitCount(open) >= k)
+			extendSubset(store, cells, open, 0, 0, k);
+	}
+
+	/**
+	 * Adds members from the positions in open to subset (with the given
+	 * value union) until it has k of them; stops early once the union has
+	 * more than k values
+	 */
+	private static void extendSubset(DomainStore store, int[] cells, long open, long subset, long values, int k) {
+		if (Long.bitCount(subset) == k) {
+			for (int p = 0; p < cells.length; ++p) {
+				if ((subset & 1L << p) == 0)
+					store.restrict(cells[p], ~values);
+			}
+			return;
+		}
+		for (; open != 0; open &= open - 1) {
+			int p = Long.numberOfTrailingZeros(open);
+			long union = values | store.domainOf(cells[p]);
+			if (Long.bitCount(union) <= k)
+				extendSubset(store, cells, open & open - 1, subset | 1L << p, union, k);
+		}
+	}
+
+	private static boolean sameBoxColumn(long places, int column, int cellSize) {
+		for (; places != 0; places &= places - 1) {
+			if (Long.numberOfTrailingZeros(places) % cellSize != column)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes value v from all cells of target that are not in unit
+	 */
+	private static void removeOutside(DomainStore store, int target, int unit, int v) {
+		long bit = 1L << v;
+		for (int cell : store.unitCells(target)) {
+			if (!store.isInUnit(cell, unit))
+				store.restrict(cell, ~bit);
+		}
+	}
+}
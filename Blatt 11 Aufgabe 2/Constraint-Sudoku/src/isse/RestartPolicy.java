@@ -0,0 +1,66 @@
+package isse;
+
+/**
+ * How many search nodes every run of a restarting search may visit, see
+ * {@link ConstraintSolver#setRestartPolicy(RestartPolicy)}
+ *
+ */
+public abstract class RestartPolicy {
+
+	/**
+	 * @param run counted from 0
+	 * @return the number of search nodes the run may visit before the
+	 *         search starts over
+	 */
+	public abstract long nodeLimit(int run);
+
+	/**
+	 * The Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ... times unit; within
+	 * a log factor of the best fixed cutoff whatever the runtime distribution
+	 * @param unit nodes of the shortest run
+	 */
+	public static RestartPolicy luby(final long unit) {
+		if (unit < 1)
+			throw new IllegalArgumentException("Unit must be positive, got " + unit);
+		return new RestartPolicy() {
+			@Override
+			public long nodeLimit(int run) {
+				return unit * lubyTerm(run + 1);
+			}
+		};
+	}
+
+	/**
+	 * first, first * factor, first * factor^2, ...
+	 * @param first nodes of the first run
+	 * @param factor above 1
+	 */
+	public static RestartPolicy geometric(final long first, final double factor) {
+		if (first < 1 || factor <= 1)
+			throw new IllegalArgumentException("Need first >= 1 and factor > 1, got " + first + ", " + factor);
+		return new RestartPolicy() {
+			@Override
+			public long nodeLimit(int run) {
+				double limit = first * Math.pow(factor, run);
+				return limit >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) limit;
+			}
+		};
+	}
+
+	/**
+	 * @param i counted from 1
+	 * @return the i-th term of the Luby sequence
+	 */
+	static long lubyTerm(int i) {
+		while (true) {
+			int k = 1;
+			while ((1L << k) - 1 < i) {
+				++k;
+			}
+			if ((1L << k) - 1 == i)
+				return 1L << (k - 1);
+			// the sequence up to 2^k - 1 repeats its first half before the peak
+			i -= (1 << (k - 1)) - 1;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package isse;
+
+import java.util.Arrays;
+
+import isse.StatisticsObject.Phase;
+
+/**
+ * Solves sudokus by translating them to CNF for the clause learning
+ * {@link CdclEngine}, no external SAT solver needed
+ *
+ * Variable cell*size + v-1 stands for "cell holds value v", i.e., the usual
+ * 729 variables for 9x9. Every cell and every unit gets an at-least-one
+ * clause and pairwise at-most-one clauses over its candidates. Candidates
+ * ruled out by a given in the same unit never show up in a clause, so the
+ * givens need no clauses of their own and the CNF only covers the open
+ * part of the board.
+ *
+ * The engine branches on a candidate being true first; that fixes a cell
+ * and rules out all its peers. Learned clauses carry over the restarts of
+ * the {@link RestartPolicy}, which counts conflicts here. Decisions,
+ * conflicts and restarts are counted as recursive calls, backtracks and
+ * restarts of the {@link StatisticsObject}
+ *
+ */
+public class SatSolver implements Solver, SolutionCounter {
+	protected int size;
+	protected StatisticsObject stats;
+	private RestartPolicy restartPolicy = RestartPolicy.luby(100);
+	// of the board at hand, kept for the next board of the same size
+	private CdclEngine engine;
+	private long[] candidates;
+	private int[] lits;
+	private final int[] pair = new int[2];
+	// the last solve gave up on the token
+	private boolean cutOff;
+
+	public SatSolver(StatisticsObject stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public StatisticsObject getStats() {
+		return stats;
+	}
+
+	/**
+	 * Sets the conflict budgets of the runs of following solves
+	 * @param policy
+	 */
+	public void setRestartPolicy(RestartPolicy policy) {
+		this.restartPolicy = policy;
+	}
+
+	public RestartPolicy getRestartPolicy() {
+		return restartPolicy;
+	}
+
+	@Override
+	public Sudoku solve(Sudoku input) {
+		return trySolve(input, CancellationToken.NONE);
+	}
+
+	@Override
+	public SolveResult solve(Sudoku input, CancellationToken token) {
+		StatisticsSnapshot before = stats.snapshot();
+		Sudoku solution = trySolve(input, token);
+		return SolveResult.of(solution, cutOff, stats.snapshot().since(before));
+	}
+
+	/**
+	 * @return the solution, null if there is none or token was cancelled
+	 */
+	private Sudoku trySolve(Sudoku input, CancellationToken token) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		boolean consistent = encode(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+
+		Sudoku solution = null;
+		SolveResult.Status status = consistent ? engine.solve(restartPolicy, token) : SolveResult.Status.UNSATISFIABLE;
+		cutOff = status == SolveResult.Status.TIMED_OUT;
+		if (status == SolveResult.Status.SOLVED)
+			solution = decode(input);
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
+		stats.tockRuntime();
+		return solution;
+	}
+
+	/**
+	 * Solves again and again, every time with a clause added that rules out
+	 * the solution found before
+	 */
+	@Override
+	public int countSolutions(Sudoku input, int limit) {
+		stats.tickRuntime();
+		long start = System.nanoTime();
+		boolean consistent = encode(input);
+		long setupTime = System.nanoTime() - start;
+		stats.addPhaseTime(Phase.SETUP, setupTime);
+
+		int count = 0;
+		while (consistent && count < limit
+				&& engine.solve(restartPolicy, CancellationToken.NONE) == SolveResult.Status.SOLVED) {
+			++count;
+			int n = 0;
+			for (int cell = 0; cell < size * size; ++cell) {
+				if (candidates[cell] != 0)
+					lits[n++] = CdclEngine.negative(cell * size + valueOf(cell) - 1);
+			}
+			// without open cells there is nothing to rule out
+			consistent = engine.addClause(lits, n);
+		}
+		stats.addPhaseTime(Phase.SEARCH, System.nanoTime() - start - setupTime);
+		stats.tockRuntime();
+		return count;
+	}
+
+	/**
+	 * Builds the CNF of input in a new engine; candidates holds the values
+	 * left for every open cell, 0 for the givens
+	 * @return false if the givens contradict each other or leave a cell or
+	 *         a unit without candidates
+	 */
+	private boolean encode(Sudoku input) {
+		size = input.getSize();
+		BoardLayout layout = BoardLayout.of(size);
+		int nCells = size * size;
+		if (engine == null || engine.getVariables() != nCells * size) {
+			candidates = new long[nCells];
+			lits = new int[nCells];
+			engine = new CdclEngine(nCells * size, stats);
+		} else {
+			Arrays.fill(candidates, 0);
+			engine.clear();
+		}
+
+		// values of the givens per unit
+		long[] used = new long[layout.nUnits];
+		for (int cell = 0; cell < nCells; ++cell) {
+			if (input.isUnassigned(cell))
+				continue;
+			int value = input.get(cell);
+			if (value < 1 || value > size)
+				return false;
+			long bit = 1L << (value - 1);
+			for (int unit : layout.cellUnits[cell]) {
+				if ((used[unit] & bit) != 0)
+					return false;
+				used[unit] |= bit;
+			}
+		}
+		for (int cell = 0; cell < nCells; ++cell) {
+			if (!input.isUnassigned(cell))
+				continue;
+			int[] units = layout.cellUnits[cell];
+			candidates[cell] = layout.fullDomain() & ~(used[units[0]] | used[units[1]] | used[units[2]]);
+			int n = 0;
+			for (long values = candidates[cell]; values != 0; values &= values - 1) {
+				lits[n++] = CdclEngine.positive(cell * size + Long.numberOfTrailingZeros(values));
+			}
+			if (!exactlyOne(n))
+				return false;
+		}
+		for (int unit = 0; unit < layout.nUnits; ++unit) {
+			for (long values = layout.fullDomain() & ~used[unit]; values != 0; values &= values - 1) {
+				int v = Long.numberOfTrailingZeros(values);
+				int n = 0;
+				for (int cell : layout.unitCells[unit]) {
+					if ((candidates[cell] & 1L << v) != 0)
+						lits[n++] = CdclEngine.positive(cell * size + v);
+				}
+				if (!exactlyOne(n))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the clauses that exactly one of the first n literals of lits holds
+	 * @return false if the engine found the clauses unsatisfiable
+	 */
+	private boolean exactlyOne(int n) {
+		for (int a = 0; a < n; ++a) {
+			for (int b = a + 1; b < n; ++b) {
+				pair[0] = lits[a] ^ 1;
+				pair[1] = lits[b] ^ 1;
+				if (!engine.addClause(pair, 2))
+					return false;
+			}
+		}
+		// added last, it reorders lits
+		return engine.addClause(lits, n);
+	}
+
+	/**
+	 * @return the value of an open cell in the model of the engine
+	 */
+	private int valueOf(int cell) {
+		for (long values = candidates[cell]; values != 0; values &= values - 1) {
+			int v = Long.numberOfTrailingZeros(values);
+			if (engine.isTrue(cell * size + v))
+				return v + 1;
+		}
+		throw new IllegalStateException("No value for cell " + cell);
+	}
+
+	private Sudoku decode(Sudoku input) {
+		Sudoku solution = new Sudoku(input);
+		for (int cell = 0; cell < size * size; ++cell) {
+			if (candidates[cell] != 0)
+				solution.put(cell, valueOf(cell));
+		}
+		return solution;
+	}
+}
@@ -0,0 +1,76 @@
+package isse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Solutions of canonical puzzles (see {@link CanonicalForm}), evicting the
+ * least recently used entry once capacity is reached; puzzles without a
+ * solution are remembered as well
+ *
+ * One cache may be shared by the solvers of several threads
+ *
+ */
+public class SolutionCache {
+	// marks puzzles known to have no solution, solutions are never empty
+	static final String UNSOLVABLE = "";
+
+	private final int capacity;
+	private final Map<String, String> solutions;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param capacity the number of puzzles kept at most
+	 */
+	public SolutionCache(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+		this.capacity = capacity;
+		solutions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the canonical solution, {@link #UNSOLVABLE} or null if key is
+	 *         not cached
+	 */
+	synchronized String get(String key) {
+		String solution = solutions.get(key);
+		if (solution == null)
+			++misses;
+		else
+			++hits;
+		return solution;
+	}
+
+	synchronized void put(String key, String solution) {
+		solutions.put(key, solution);
+	}
+
+	public synchronized int size() {
+		return solutions.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		solutions.clear();
+	}
+}
@@ -0,0 +1,24 @@
+package isse;
+
+/**
+ * Solvers that can search past the first solution
+ *
+ */
+public interface SolutionCounter {
+
+	/**
+	 * Counts the solutions of input, but stops searching as soon as limit
+	 * of them are found
+	 * @param input
+	 * @param limit
+	 * @return the number of solutions, at most limit; 0 if there is none
+	 */
+	public abstract int countSolutions(Sudoku input, int limit);
+
+	/**
+	 * @return true if input has exactly one solution; searches for two at most
+	 */
+	public default boolean hasUniqueSolution(Sudoku input) {
+		return countSolutions(input, 2) == 1;
+	}
+}
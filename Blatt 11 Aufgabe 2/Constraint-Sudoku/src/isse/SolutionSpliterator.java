@@ -0,0 +1,170 @@
+package isse;
+
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Enumerates the solutions of a puzzle one at a time, see
+ * {@link ConstraintSolver#solutions(Sudoku)}
+ *
+ * The search of the constraint solver, turned inside out: instead of
+ * recursing, the branching points are kept on an explicit stack of (cell,
+ * values not tried yet, trail mark), so the search can stop after every
+ * solution and resume on the next {@link #tryAdvance(Consumer)}.
+ *
+ * {@link #trySplit()} hands half of the untried values of the oldest
+ * branching point to a new spliterator working on a copy of the store
+ *
+ */
+final class SolutionSpliterator implements Spliterator<Sudoku> {
+	private final Sudoku input;
+	private final int size;
+	private final DomainStore store;
+	private final VariableSelector selector;
+	private final ValueOrdering ordering;
+	private final StatisticsObject stats;
+
+	// the branching points from the root down
+	private final int[] frameCell;
+	private final long[] frameValues;
+	private final int[] frameMark;
+	private int top = -1;
+	// the store holds a fresh assignment that has not been propagated yet
+	private boolean needsPropagation = false;
+	// the root itself is solved by propagation alone
+	private boolean rootSolved = false;
+	// the number of solutions is unknown, splits halve the guess
+	private long estimate = Long.MAX_VALUE;
+	// counters of the store already handed to stats
+	private long flushedRemovals = 0;
+	private long flushedPropagations = 0;
+
+	SolutionSpliterator(Sudoku input, Set<PropagationRule> rules, VariableSelector selector,
+			ValueOrdering ordering, StatisticsObject stats) {
+		this(input, new DomainStore(input, rules), selector, ordering, stats);
+		selector.start(store);
+		if (store.isConsistent() && store.propagate()) {
+			rootSolved = !branch();
+		}
+		flushStats();
+	}
+
+	private SolutionSpliterator(Sudoku input, DomainStore store, VariableSelector selector,
+			ValueOrdering ordering, StatisticsObject stats) {
+		this.input = input;
+		this.size = input.getSize();
+		this.store = store;
+		this.selector = selector;
+		this.ordering = ordering;
+		this.stats = stats;
+		frameCell = new int[size * size + 1];
+		frameValues = new long[size * size + 1];
+		frameMark = new int[size * size + 1];
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Sudoku> action) {
+		if (rootSolved) {
+			rootSolved = false;
+			action.accept(solution());
+			return true;
+		}
+		while (top >= 0) {
+			if (needsPropagation) {
+				needsPropagation = false;
+				stats.markDepth(top + 1);
+				if (!store.propagate()) {
+					selector.failed(store);
+				} else if (!branch()) {
+					flushStats();
+					action.accept(solution());
+					return true;
+				}
+				continue;
+			}
+			// next value of the deepest branching point
+			store.undo(frameMark[top]);
+			long values = frameValues[top];
+			if (values == 0) {
+				--top;
+				stats.markBacktrack();
+				continue;
+			}
+			int cell = frameCell[top];
+			int value = ordering.nextValue(store, cell, values);
+			frameValues[top] = values & ~(1L << (value - 1));
+			store.assign(cell / size, cell % size, value);
+			stats.markRecursiveCall();
+			needsPropagation = true;
+		}
+		flushStats();
+		return false;
+	}
+
+	/**
+	 * Pushes a branching point for the cell the selector chooses
+	 * @return false if all cells are fixed, i.e., the store holds a solution
+	 */
+	private boolean branch() {
+		int cell = selector.selectCell(store);
+		if (cell == -1)
+			return false;
+		++top;
+		frameCell[top] = cell;
+		frameValues[top] = store.getDomainMask(cell / size, cell % size);
+		frameMark[top] = store.mark();
+		return true;
+	}
+
+	private Sudoku solution() {
+		Sudoku solution = new Sudoku(input);
+		store.copySolution(solution);
+		return solution;
+	}
+
+	@Override
+	public Spliterator<Sudoku> trySplit() {
+		for (int k = 0; k <= top; ++k) {
+			long values = frameValues[k];
+			// a branching point whose first branch is not searched yet keeps
+			// at least one value, else splits could pass it on forever
+			boolean searching = k < top || store.mark() > frameMark[k];
+			if (values == 0 || !searching && Long.bitCount(values) < 2)
+				continue;
+			// the upper half of the untried values goes to the new spliterator
+			long given = values;
+			for (int n = Long.bitCount(values) / 2; n > 0; --n) {
+				given &= given - 1;
+			}
+			frameValues[k] = values & ~given;
+			SolutionSpliterator split = new SolutionSpliterator(input, new DomainStore(store, frameMark[k]), selector,
+					ordering, stats);
+			split.top = 0;
+			split.frameCell[0] = frameCell[k];
+			split.frameValues[0] = given;
+			split.frameMark[0] = 0;
+			estimate >>>= 1;
+			split.estimate = estimate;
+			return split;
+		}
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+		return DISTINCT | NONNULL;
+	}
+
+	private void flushStats() {
+		stats.markDomainRemovals(store.getRemovals() - flushedRemovals);
+		stats.markPropagations(store.getPropagations() - flushedPropagations);
+		flushedRemovals = store.getRemovals();
+		flushedPropagations = store.getPropagations();
+	}
+}
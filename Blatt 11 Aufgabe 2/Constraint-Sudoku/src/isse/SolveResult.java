@@ -0,0 +1,63 @@
+package isse;
+
+/**
+ * Outcome of a solve that may be cancelled, see
+ * {@link Solver#solve(Sudoku, CancellationToken)}
+ *
+ */
+public class SolveResult {
+
+	public enum Status {
+		SOLVED,
+		/** the search space was exhausted without a solution */
+		UNSATISFIABLE,
+		/** the token was cancelled or its deadline passed before the search ended */
+		TIMED_OUT
+	}
+
+	private final Status status;
+	private final Sudoku solution;
+	private final StatisticsSnapshot statistics;
+
+	public SolveResult(Status status, Sudoku solution, StatisticsSnapshot statistics) {
+		this.status = status;
+		this.solution = solution;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Classifies the result of a search
+	 * @param solution null if the search found none
+	 * @param cutOff true if the search gave up on a cancelled token; a
+	 *        token cancelled after the search ended does not count
+	 */
+	static SolveResult of(Sudoku solution, boolean cutOff, StatisticsSnapshot statistics) {
+		if (solution != null)
+			return new SolveResult(Status.SOLVED, solution, statistics);
+		return new SolveResult(cutOff ? Status.TIMED_OUT : Status.UNSATISFIABLE, null, statistics);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the solution, null unless the status is SOLVED
+	 */
+	public Sudoku getSolution() {
+		return solution;
+	}
+
+	/**
+	 * @return the counters of this solve alone; for a timed out solve
+	 *         those up to the cancellation
+	 */
+	public StatisticsSnapshot getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public String toString() {
+		return status + " " + statistics;
+	}
+}
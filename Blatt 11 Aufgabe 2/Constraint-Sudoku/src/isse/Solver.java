@@ -1,5 +1,7 @@
 package isse;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Generic solver interface - just asks for a solved instance and
  * a stats object
@@ -12,4 +14,28 @@ public interface Solver {
 
 	public abstract Sudoku solve(Sudoku input);
 
+	/**
+	 * Like {@link #solve(Sudoku)}, but gives up once token is cancelled; the
+	 * default only looks at the token before starting, solvers with a
+	 * search override this to poll it while branching
+	 * @param input
+	 * @param token e.g., {@link CancellationToken#withTimeout(long, TimeUnit)}
+	 * @return the solution or why there is none, with the counters of this solve
+	 */
+	public default SolveResult solve(Sudoku input, CancellationToken token) {
+		if (token.isCancelled())
+			return SolveResult.of(null, true, new StatisticsObject().snapshot());
+		StatisticsSnapshot before = getStats().snapshot();
+		Sudoku solution = solve(input);
+		StatisticsSnapshot after = getStats().snapshot();
+		return SolveResult.of(solution, false, after.since(before));
+	}
+
+	/**
+	 * @see #solve(Sudoku, CancellationToken)
+	 */
+	public default SolveResult solve(Sudoku input, long timeout, TimeUnit unit) {
+		return solve(input, CancellationToken.withTimeout(timeout, unit));
+	}
+
 }
@@ -0,0 +1,12 @@
+package isse;
+
+/**
+ * Creates fresh solver instances, e.g., one per worker thread
+ * since solvers keep search state and are not thread-safe
+ *
+ */
+public interface SolverFactory {
+
+	public abstract Solver createSolver(StatisticsObject stats);
+
+}
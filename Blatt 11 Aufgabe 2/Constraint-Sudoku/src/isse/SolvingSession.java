@@ -0,0 +1,219 @@
+package isse;
+
+import java.util.Arrays;
+
+/**
+ * A puzzle that is edited cell by cell, e.g., by an interactive front-end,
+ * and asked after every edit whether it can still be solved and which
+ * values are left for a cell
+ *
+ * The session keeps one {@link DomainStore} with the givens and all edits
+ * propagated. An edit assigns its cell and propagates from there on, and
+ * the trail position before every edit is kept. Retracting the latest edit
+ * is therefore a plain undo. Retracting an older one undoes back to it and
+ * assigns the edits made after it again. Once an edit contradicts the
+ * earlier ones, the later edits are only recorded until that one is
+ * retracted.
+ *
+ * The last solution found is kept. Whenever it fits every domain, the
+ * next query returns it without a search. Otherwise the
+ * {@link ConstraintSolver} searches right on the store and the session
+ * undoes the search afterwards, so only the open cells are searched. A
+ * session is not thread-safe
+ *
+ */
+public class SolvingSession {
+	private final Sudoku puzzle;
+	// the givens and the edits
+	private final Sudoku board;
+	private final int size;
+	private final ConstraintSolver solver;
+	private final DomainStore store;
+	// the givens alone contradict each other
+	private final boolean givensInconsistent;
+
+	// edited cells in the order of the edits, with the trail mark before each
+	private final int[] editCells;
+	private final int[] editMarks;
+	private int nEdits = 0;
+	// the first edit that contradicts the ones before, -1 if there is none
+	private int conflict = -1;
+
+	private Sudoku lastSolution;
+	// no solution for the current edits; assigning more cannot change that
+	private boolean knownUnsolvable = false;
+	private long reused = 0;
+
+	public SolvingSession(Sudoku puzzle) {
+		this(puzzle, new ConstraintSolver(new StatisticsObject()));
+	}
+
+	/**
+	 * @param puzzle its givens cannot be edited
+	 * @param solver searches when the last solution does not fit any more;
+	 *        its propagation rules are also used for the edits
+	 */
+	public SolvingSession(Sudoku puzzle, ConstraintSolver solver) {
+		this.puzzle = new Sudoku(puzzle);
+		this.board = new Sudoku(puzzle);
+		this.size = puzzle.getSize();
+		this.solver = solver;
+		store = new DomainStore(puzzle, solver.getPropagationRules());
+		givensInconsistent = !store.isConsistent();
+		editCells = new int[size * size];
+		editMarks = new int[size * size];
+	}
+
+	/**
+	 * Sets cell (i, j) to value, replacing an earlier edit of the cell
+	 * @throws IllegalArgumentException for a given or a value out of range
+	 */
+	public void assign(int i, int j, int value) {
+		if (!puzzle.isUnassigned(i, j))
+			throw new IllegalArgumentException("Cell (" + i + ", " + j + ") is a given");
+		if (value < 1 || value > size)
+			throw new IllegalArgumentException("Value " + value + " out of range");
+		int cell = i * size + j;
+		if (board.get(cell) == value)
+			return;
+		if (!board.isUnassigned(cell))
+			retract(i, j);
+		board.put(cell, value);
+		editCells[nEdits] = cell;
+		apply(nEdits++);
+	}
+
+	/**
+	 * Empties an edited cell again
+	 * @return false if the cell was not edited
+	 */
+	public boolean retract(int i, int j) {
+		int cell = i * size + j;
+		if (!puzzle.isUnassigned(cell) || board.isUnassigned(cell))
+			return false;
+		int k = 0;
+		while (editCells[k] != cell) {
+			++k;
+		}
+		board.putEmpty(cell);
+		boolean replay = !givensInconsistent && (conflict == -1 || k <= conflict);
+		if (replay) {
+			store.undo(editMarks[k]);
+			conflict = -1;
+		}
+		System.arraycopy(editCells, k + 1, editCells, k, nEdits - k - 1);
+		--nEdits;
+		if (replay) {
+			for (int e = k; e < nEdits; ++e) {
+				apply(e);
+			}
+		}
+		// fewer constraints, a solution may exist again
+		knownUnsolvable = false;
+		return true;
+	}
+
+	/**
+	 * Assigns and propagates the e-th edit, unless an earlier one failed
+	 */
+	private void apply(int e) {
+		editMarks[e] = store.mark();
+		if (givensInconsistent || conflict != -1)
+			return;
+		int cell = editCells[e];
+		store.assign(cell / size, cell % size, board.get(cell));
+		if (!store.propagate()) {
+			conflict = e;
+			knownUnsolvable = true;
+		}
+	}
+
+	/**
+	 * @return false if propagation alone shows that the givens and the
+	 *         edits contradict each other; true does not mean that there
+	 *         is a solution, see {@link #isSolvable()}
+	 */
+	public boolean isConsistent() {
+		return !givensInconsistent && conflict == -1;
+	}
+
+	/**
+	 * @return the values left for cell (i, j) after propagating the givens
+	 *         and edits, bit (v-1) for value v; 0 for every cell once they
+	 *         are inconsistent
+	 */
+	public long getCandidates(int i, int j) {
+		return isConsistent() ? store.getDomainMask(i, j) : 0;
+	}
+
+	/**
+	 * @return the candidates of cell (i, j) in ascending order
+	 */
+	public int[] getCandidateValues(int i, int j) {
+		long mask = getCandidates(i, j);
+		int[] values = new int[Long.bitCount(mask)];
+		for (int k = 0; mask != 0; mask &= mask - 1) {
+			values[k++] = Long.numberOfTrailingZeros(mask) + 1;
+		}
+		return values;
+	}
+
+	public boolean isSolvable() {
+		return solve(CancellationToken.NONE).getStatus() == SolveResult.Status.SOLVED;
+	}
+
+	/**
+	 * Finds a solution that agrees with the givens and all edits
+	 * @param token stops the search, e.g., to answer a keystroke in time
+	 * @return the last solution again if it still fits, else the result of
+	 *         a search from the current domains
+	 */
+	public SolveResult solve(CancellationToken token) {
+		StatisticsObject stats = solver.getStats();
+		StatisticsSnapshot before = stats.snapshot();
+		if (!isConsistent() || knownUnsolvable)
+			return SolveResult.of(null, false, stats.snapshot().since(before));
+		if (lastSolution != null && fitsDomains(lastSolution)) {
+			++reused;
+			return SolveResult.of(lastSolution, false, stats.snapshot().since(before));
+		}
+		int mark = store.mark();
+		Sudoku solution = solver.solveFrom(board, store, token);
+		store.undo(mark);
+		// an older solution may fit again once edits are retracted
+		if (solution != null)
+			lastSolution = solution;
+		boolean cutOff = solver.wasCutOff();
+		knownUnsolvable = solution == null && !cutOff;
+		return SolveResult.of(solution, cutOff, stats.snapshot().since(before));
+	}
+
+	private boolean fitsDomains(Sudoku solution) {
+		for (int cell = 0; cell < size * size; ++cell) {
+			if ((store.domainOf(cell) & 1L << (solution.get(cell) - 1)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return a copy of the givens with all edits
+	 */
+	public Sudoku getBoard() {
+		return new Sudoku(board);
+	}
+
+	/**
+	 * @return the cells edited so far, as i*size + j in the order of the edits
+	 */
+	public int[] getEdits() {
+		return Arrays.copyOf(editCells, nEdits);
+	}
+
+	/**
+	 * @return how often a query was answered by the last solution
+	 */
+	public long getReusedSolutions() {
+		return reused;
+	}
+}
@@ -1,38 +1,215 @@
 package isse;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Instrumentation of code to evaluate 
  * different algorithms
+ *
+ * All counters are safe to update from several threads at once;
+ * {@link #snapshot()} takes a consistent-enough copy for reporting
  * @author alexander
  *
  */
 public class StatisticsObject {
-	protected int recursiveCalls;
-	protected long start;
-	protected long end;
-	protected long runtime;
-	
+
+	/**
+	 * Parts of a solve whose time is measured separately
+	 */
+	public enum Phase {
+		/** building domains etc. from the givens */
+		SETUP,
+		/** inference without branching */
+		PROPAGATION,
+		/** branching and backtracking */
+		SEARCH
+	}
+
+	protected final LongAdder recursiveCalls = new LongAdder();
+	protected final LongAdder propagations = new LongAdder();
+	protected final LongAdder domainRemovals = new LongAdder();
+	protected final LongAdder backtracks = new LongAdder();
+	protected final LongAdder restarts = new LongAdder();
+	protected final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	protected final LongAdder solves = new LongAdder();
+	protected final LongAdder runtime = new LongAdder();
+	protected final LongAdder[] phaseRuntime = new LongAdder[Phase.values().length];
+	// units on which a propagation rule removed values
+	protected final LongAdder[] ruleHits = new LongAdder[PropagationRule.values().length];
+	protected final LatencyHistogram latencies = new LatencyHistogram();
+	// start of the running solve, per thread as solvers may share this object
+	private final ThreadLocal<long[]> start = ThreadLocal.withInitial(() -> new long[1]);
+
+	public StatisticsObject() {
+		for (int p = 0; p < phaseRuntime.length; ++p) {
+			phaseRuntime[p] = new LongAdder();
+		}
+		for (int r = 0; r < ruleHits.length; ++r) {
+			ruleHits[r] = new LongAdder();
+		}
+	}
+
 	public void tickRuntime() {
-		start = System.nanoTime();
+		start.get()[0] = System.nanoTime();
 	}
-	
+
 	public void tockRuntime() {
-		end = System.nanoTime();
-		runtime = end - start;
-		runtime = TimeUnit.SECONDS.convert(runtime, TimeUnit.NANOSECONDS);
+		long elapsed = System.nanoTime() - start.get()[0];
+		runtime.add(elapsed);
+		solves.increment();
+		latencies.record(elapsed);
 	}
 
 	public void markRecursiveCall() {
-		++recursiveCalls;
+		recursiveCalls.increment();
+	}
+
+	public void markPropagation() {
+		propagations.increment();
+	}
+
+	public void markPropagations(long count) {
+		propagations.add(count);
+	}
+
+	public void markDomainRemovals(long removals) {
+		domainRemovals.add(removals);
 	}
-	
+
+	public void markBacktrack() {
+		backtracks.increment();
+	}
+
+	public void markRestart() {
+		restarts.increment();
+	}
+
+	public void markDepth(int depth) {
+		maxDepth.accumulate(depth);
+	}
+
+	public void addPhaseTime(Phase phase, long nanos) {
+		phaseRuntime[phase.ordinal()].add(nanos);
+	}
+
+	/**
+	 * @param hits number of units on which rule removed values, see
+	 *        {@link DomainStore#getRuleHits(PropagationRule)}
+	 */
+	public void markRuleHits(PropagationRule rule, long hits) {
+		ruleHits[rule.ordinal()].add(hits);
+	}
+
+	public long getRecursiveCalls() {
+		return recursiveCalls.sum();
+	}
+
+	public long getPropagations() {
+		return propagations.sum();
+	}
+
+	public long getDomainRemovals() {
+		return domainRemovals.sum();
+	}
+
+	public long getBacktracks() {
+		return backtracks.sum();
+	}
+
+	public long getRestarts() {
+		return restarts.sum();
+	}
+
+	public long getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	/**
+	 * @return nanoseconds spent in all solves so far
+	 */
+	public long getRuntime() {
+		return runtime.sum();
+	}
+
+	public long getPhaseRuntime(Phase phase) {
+		return phaseRuntime[phase.ordinal()].sum();
+	}
+
+	public long getRuleHits(PropagationRule rule) {
+		return ruleHits[rule.ordinal()].sum();
+	}
+
+	/**
+	 * @return the durations of the single solves
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Adds the counters of other, e.g., of a sub-search that ran on another thread
+	 * @param other
+	 */
+	public void merge(StatisticsObject other) {
+		merge(other.snapshot());
+	}
+
+	public void merge(StatisticsSnapshot other) {
+		recursiveCalls.add(other.getRecursiveCalls());
+		propagations.add(other.getPropagations());
+		domainRemovals.add(other.getDomainRemovals());
+		backtracks.add(other.getBacktracks());
+		restarts.add(other.getRestarts());
+		maxDepth.accumulate(other.getMaxDepth());
+		solves.add(other.getSolves());
+		runtime.add(other.getRuntime());
+		for (Phase phase : Phase.values()) {
+			phaseRuntime[phase.ordinal()].add(other.getPhaseRuntime(phase));
+		}
+		for (PropagationRule rule : PropagationRule.values()) {
+			ruleHits[rule.ordinal()].add(other.getRuleHits(rule));
+		}
+		latencies.merge(other.getLatencies());
+	}
+
+	public StatisticsSnapshot snapshot() {
+		long[] phases = new long[phaseRuntime.length];
+		for (int p = 0; p < phases.length; ++p) {
+			phases[p] = phaseRuntime[p].sum();
+		}
+		long[] hits = new long[ruleHits.length];
+		for (int r = 0; r < hits.length; ++r) {
+			hits[r] = ruleHits[r].sum();
+		}
+		return new StatisticsSnapshot(recursiveCalls.sum(), propagations.sum(), domainRemovals.sum(),
+				backtracks.sum(), restarts.sum(), maxDepth.get(), solves.sum(), runtime.sum(), phases, hits,
+				latencies.copy());
+	}
+
+	/**
+	 * @return the current values as one JSON object
+	 */
+	public String toJson() {
+		return snapshot().toJson();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("+-+-+-+-+-+ STATISTICS +-+-+-+-+-+-+\n");
-		sb.append(" + Elapsed time in secs: " + runtime + "\n");
-		sb.append(" + recursive calls : " + recursiveCalls + "\n");
+		sb.append(String.format(" + Elapsed time in ms: %.3f%n", runtime.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+		sb.append(" + recursive calls : " + recursiveCalls.sum() + "\n");
+		sb.append(" + propagations : " + propagations.sum() + "\n");
+		sb.append(" + domain removals : " + domainRemovals.sum() + "\n");
+		sb.append(" + backtracks : " + backtracks.sum() + "\n");
+		if (restarts.sum() > 0) {
+			sb.append(" + restarts : " + restarts.sum() + "\n");
+		}
+		sb.append(" + max depth : " + maxDepth.get() + "\n");
+		if (solves.sum() > 1) {
+			sb.append(" + latencies : " + latencies + "\n");
+		}
 		sb.append("------------------------------------\n");
 		return sb.toString();
 	}
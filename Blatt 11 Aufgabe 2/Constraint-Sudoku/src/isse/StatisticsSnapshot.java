@@ -0,0 +1,170 @@
+package isse;
+
+import java.util.Locale;
+
+import isse.StatisticsObject.Phase;
+
+/**
+ * Immutable copy of the counters of a {@link StatisticsObject}; snapshots of
+ * several workers can be merged into one
+ *
+ */
+public class StatisticsSnapshot {
+	private final long recursiveCalls;
+	private final long propagations;
+	private final long domainRemovals;
+	private final long backtracks;
+	private final long restarts;
+	private final long maxDepth;
+	private final long solves;
+	private final long runtime;
+	private final long[] phaseRuntime;
+	private final long[] ruleHits;
+	private final LatencyHistogram latencies;
+
+	StatisticsSnapshot(long recursiveCalls, long propagations, long domainRemovals, long backtracks, long restarts,
+			long maxDepth, long solves, long runtime, long[] phaseRuntime, long[] ruleHits,
+			LatencyHistogram latencies) {
+		this.recursiveCalls = recursiveCalls;
+		this.propagations = propagations;
+		this.domainRemovals = domainRemovals;
+		this.backtracks = backtracks;
+		this.restarts = restarts;
+		this.maxDepth = maxDepth;
+		this.solves = solves;
+		this.runtime = runtime;
+		this.phaseRuntime = phaseRuntime;
+		this.ruleHits = ruleHits;
+		this.latencies = latencies;
+	}
+
+	/**
+	 * @return a new snapshot with the counters of both, max depth is the larger one
+	 */
+	public StatisticsSnapshot merge(StatisticsSnapshot other) {
+		long[] phases = new long[phaseRuntime.length];
+		for (int p = 0; p < phases.length; ++p) {
+			phases[p] = phaseRuntime[p] + other.phaseRuntime[p];
+		}
+		long[] hits = new long[ruleHits.length];
+		for (int r = 0; r < hits.length; ++r) {
+			hits[r] = ruleHits[r] + other.ruleHits[r];
+		}
+		LatencyHistogram merged = latencies.copy();
+		merged.merge(other.latencies);
+		return new StatisticsSnapshot(recursiveCalls + other.recursiveCalls, propagations + other.propagations,
+				domainRemovals + other.domainRemovals, backtracks + other.backtracks,
+				restarts + other.restarts, Math.max(maxDepth, other.maxDepth), solves + other.solves,
+				runtime + other.runtime, phases, hits, merged);
+	}
+
+	/**
+	 * @param earlier a snapshot of the same stats object taken before
+	 * @return the counters recorded between the two snapshots; max depth
+	 *         cannot be split up and is the one of this snapshot
+	 */
+	public StatisticsSnapshot since(StatisticsSnapshot earlier) {
+		long[] phases = new long[phaseRuntime.length];
+		for (int p = 0; p < phases.length; ++p) {
+			phases[p] = phaseRuntime[p] - earlier.phaseRuntime[p];
+		}
+		long[] hits = new long[ruleHits.length];
+		for (int r = 0; r < hits.length; ++r) {
+			hits[r] = ruleHits[r] - earlier.ruleHits[r];
+		}
+		return new StatisticsSnapshot(recursiveCalls - earlier.recursiveCalls, propagations - earlier.propagations,
+				domainRemovals - earlier.domainRemovals, backtracks - earlier.backtracks,
+				restarts - earlier.restarts, maxDepth, solves - earlier.solves, runtime - earlier.runtime, phases,
+				hits, latencies.since(earlier.latencies));
+	}
+
+	public long getRecursiveCalls() {
+		return recursiveCalls;
+	}
+
+	public long getPropagations() {
+		return propagations;
+	}
+
+	public long getDomainRemovals() {
+		return domainRemovals;
+	}
+
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	public long getRestarts() {
+		return restarts;
+	}
+
+	public long getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getSolves() {
+		return solves;
+	}
+
+	public long getRuntime() {
+		return runtime;
+	}
+
+	public long getPhaseRuntime(Phase phase) {
+		return phaseRuntime[phase.ordinal()];
+	}
+
+	/**
+	 * @return number of units on which rule removed values
+	 */
+	public long getRuleHits(PropagationRule rule) {
+		return ruleHits[rule.ordinal()];
+	}
+
+	/**
+	 * @return the histogram of this snapshot; a copy, changing it does not affect the snapshot's source
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * All counters as one JSON object, times in nanoseconds
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{");
+		sb.append("\"recursiveCalls\":").append(recursiveCalls);
+		sb.append(",\"propagations\":").append(propagations);
+		sb.append(",\"domainRemovals\":").append(domainRemovals);
+		sb.append(",\"backtracks\":").append(backtracks);
+		sb.append(",\"restarts\":").append(restarts);
+		sb.append(",\"maxDepth\":").append(maxDepth);
+		sb.append(",\"solves\":").append(solves);
+		sb.append(",\"runtimeNanos\":").append(runtime);
+		sb.append(",\"phaseNanos\":{");
+		for (Phase phase : Phase.values()) {
+			if (phase.ordinal() > 0)
+				sb.append(',');
+			sb.append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\":").append(getPhaseRuntime(phase));
+		}
+		sb.append("},\"ruleHits\":{");
+		for (PropagationRule rule : PropagationRule.values()) {
+			if (rule.ordinal() > 0)
+				sb.append(',');
+			sb.append('"').append(rule.name().toLowerCase(Locale.ROOT)).append("\":").append(getRuleHits(rule));
+		}
+		sb.append("},\"latencyNanos\":{");
+		sb.append("\"count\":").append(latencies.getCount());
+		sb.append(",\"p50\":").append(latencies.getPercentile(50));
+		sb.append(",\"p90\":").append(latencies.getPercentile(90));
+		sb.append(",\"p99\":").append(latencies.getPercentile(99));
+		sb.append(",\"max\":").append(latencies.getPercentile(100));
+		sb.append("}}");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+}
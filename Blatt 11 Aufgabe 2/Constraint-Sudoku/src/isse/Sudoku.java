@@ -1,30 +1,53 @@
 package isse;
 
-import java.util.Set;
-import java.util.TreeSet;
-
 /**
  * Represents one particular sudoku board
+ *
+ * Boards are size x size with sub-fields of cellSize x cellSize, so size
+ * has to be a square number; values range from 1 to size. Domains are kept
+ * as bitmasks in a long, hence size is limited to {@link #MAX_SIZE}
+ *
+ * The cells are one flat byte array, cell (i, j) at index i*size + j as in
+ * {@link VariableToCoordinates#toIndex}, so copying a board is a single
+ * clone; hot loops can use the index based accessors directly
  * @author alexander
  *
  */
 public class Sudoku {
 
-	protected final int size = 9;
-	protected final int cellSize = 3;
+	/** the largest supported board, 64 values fit into a long bitmask */
+	public static final int MAX_SIZE = 64;
+	/** symbols for the values 1 to 61 in the character based file formats */
+	public static final String SYMBOLS = "123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+	protected final int size;
+	protected final int cellSize;
 	protected final int nullInt = -1;
-	protected int[][] board;
+	protected byte[] cells;
 	
+	/**
+	 * An empty 9x9 board
+	 */
 	public Sudoku() {
-		board = new int[size][size];
+		this(9);
+	}
+
+	/**
+	 * An empty board
+	 * @param size number of rows, a square number up to {@link #MAX_SIZE}
+	 */
+	public Sudoku(int size) {
+		this.size = size;
+		this.cellSize = (int) Math.round(Math.sqrt(size));
+		if(size < 1 || size > MAX_SIZE || cellSize * cellSize != size)
+			throw new IllegalArgumentException("Unsupported board size " + size);
+		cells = new byte[size * size];
 	}
 	
 	public Sudoku(Sudoku input) {
-		int length = input.board.length;
-	    board = new int[length][input.board[0].length];
-	    for (int i = 0; i < length; i++) {
-	        System.arraycopy(input.board[i], 0, board[i], 0, input.board[i].length);
-	    }
+		size = input.size;
+		cellSize = input.cellSize;
+		cells = input.cells.clone();
 	}
 
 	/**
@@ -33,27 +56,87 @@ public class Sudoku {
 	 * @param j
 	 */
 	public void putEmpty(int i, int j) {
-		board[i][j] = nullInt;
+		cells[i * size + j] = nullInt;
 	}
 
+	/**
+	 * @param numericValue from 1 to size
+	 */
 	public void put(int i, int j, int numericValue) {
-		board[i][j] = numericValue;		
+		cells[i * size + j] = (byte) numericValue;
 	}
 	
 	public int get(int i, int j) {
-		return board[i][j];
+		return cells[i * size + j];
+	}
+
+	/**
+	 * @param index i*size + j
+	 */
+	public void putEmpty(int index) {
+		cells[index] = nullInt;
+	}
+
+	/**
+	 * @param index i*size + j
+	 * @param numericValue from 1 to size
+	 */
+	public void put(int index, int numericValue) {
+		cells[index] = (byte) numericValue;
+	}
+
+	/**
+	 * @param index i*size + j
+	 */
+	public int get(int index) {
+		return cells[index];
+	}
+
+	/**
+	 * @param index i*size + j
+	 */
+	public boolean isUnassigned(int index) {
+		return cells[index] == nullInt;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return the value of a symbol from {@link #SYMBOLS}, 0 for the empty
+	 *         markers '.' and '0', -1 for anything else
+	 */
+	public static int symbolValue(char symbol) {
+		if(symbol == '.' || symbol == '0')
+			return 0;
+		int index = SYMBOLS.indexOf(symbol);
+		return index < 0 ? -1 : index + 1;
 	}
 	
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder(4 *size*size*size); // allocate enough space for whitespace etc
-		sb.append("-----------------------\n");
+		// symbols up to 61 values, two-digit numbers beyond
+		int width = size < SYMBOLS.length() ? 1 : 2;
+		StringBuilder line = new StringBuilder();
+		for(int k = 0; k < (width + 1) * size + 2 * cellSize - 1; ++k)
+			line.append('-');
+		line.append('\n');
+		sb.append(line);
 		for(int i = 0; i < size; ++i) {
 			for(int j = 0; j < size; ++j) {
-				if(board[i][j] == nullInt) 
-					sb.append(" ");
-				else 
-					sb.append(board[i][j]);
+				int value = cells[i * size + j];
+				if(value == nullInt) 
+					sb.append(width == 1 ? " " : "  ");
+				else if(width == 1)
+					sb.append(SYMBOLS.charAt(value - 1));
+				else
+					sb.append(String.format("%2d", value));
 				sb.append(' ');
 				if(j % cellSize == cellSize-1) {
 					sb.append("| ");
@@ -61,25 +144,25 @@ public class Sudoku {
 			}
 			sb.append("\n");
 			if(i % cellSize == cellSize -1){
-				sb.append("-----------------------\n");
+				sb.append(line);
 			}
 		}
 		return sb.toString();
 	}
 
 	public boolean isUnassigned(int i, int j) {
-		return board[i][j] == nullInt;
+		return cells[i * size + j] == nullInt;
 	}
 
 	public boolean isSolution(Sudoku original) {
+		if(original.size != size)
+			return false;
 		// has to be fully assigned and has to match original
-		for(int i = 0; i < size; ++i) {
-			for(int j = 0; j < size; ++j){
-				if(board[i][j] == nullInt) 
-					return false;
-				if(original.board[i][j] != nullInt && original.board[i][j] != board[i][j]) 
-					return false;
-			}
+		for(int k = 0; k < cells.length; ++k) {
+			if(cells[k] == nullInt) 
+				return false;
+			if(original.cells[k] != nullInt && original.cells[k] != cells[k]) 
+				return false;
 		}
 		
 		return isValid();
@@ -88,71 +171,116 @@ public class Sudoku {
 	
 	public boolean isValid() {
 		// test rows
-		int[] values = new int[size];
-		
 		for(int i = 0; i < size; ++i) {
-			System.arraycopy(board[i], 0, values, 0, values.length);
-			if(!checkDomain(values) || ! alldifferent(values))
-				return false;
+			long seen = 0;
+			for(int j = 0; j < size; ++j) {
+				if(clashes(seen, cells[i * size + j], size))
+					return false;
+				seen = see(seen, cells[i * size + j]);
+			}
 		}
 		
 		// test columns
 		for(int j = 0; j < size; ++j) {
+			long seen = 0;
 			for(int i = 0; i < size; ++i) {
-				values[i] = board[i][j];
+				if(clashes(seen, cells[i * size + j], size))
+					return false;
+				seen = see(seen, cells[i * size + j]);
 			}
-			if(!checkDomain(values) || ! alldifferent(values))
-				return false;
 		}
 		
 		// test subfields
-		int ctr = 0; 
 		for(int sfI = 0; sfI < cellSize; ++sfI) {
 			for(int sfJ = 0; sfJ < cellSize; ++sfJ) {
-				// iterate from 
-				
-				ctr = 0;
+				long seen = 0;
 				for(int i = 0; i < cellSize; ++i) {
 					for(int j = 0; j < cellSize; ++j) {
-						values[ctr] = board[sfI*cellSize + i][sfJ * cellSize + j];
-						++ctr;
+						int value = cells[(sfI*cellSize + i) * size + sfJ * cellSize + j];
+						if(clashes(seen, value, size))
+							return false;
+						seen = see(seen, value);
 					}
 				}
-				if(!checkDomain(values) || ! alldifferent(values))
-					return false;
 			}	
 		}
 		return true;
 	}
 
 	/**
-	 * Implements the feasibility check of an alldifferent constraint
-	 * assumes that the domains are between 0 and 9
-	 * @param values
-	 * @return
+	 * Validates a board stored row by row in cells[offset .. offset + size*size - 1],
+	 * laid out like the cells of a Sudoku, i.e., empty cells hold -1
+	 * @param cells
+	 * @param offset
+	 * @param size the number of rows of the board, has to be a square number
+	 * @return true if no row, column or sub-field contains a value twice
+	 *         and all values are in range
 	 */
-	private boolean alldifferent(int[] values) {
-		Set<Integer> seenVals = new TreeSet<Integer>();
-		for(int i = 0; i < values.length; ++i) {
-			if(values[i] == nullInt)
-				continue;
-			
-			if(seenVals.contains(values[i]))
-				return false;
-			else 
-				seenVals.add(values[i]);
+	public static boolean isValid(byte[] cells, int offset, int size) {
+		int cellSize = (int) Math.sqrt(size);
+		for(int i = 0; i < size; ++i) {
+			long seenRow = 0;
+			long seenCol = 0;
+			long seenBox = 0;
+			// the i-th sub-field starts at this row and column
+			int boxRow = (i / cellSize) * cellSize;
+			int boxCol = (i % cellSize) * cellSize;
+			for(int j = 0; j < size; ++j) {
+				int rowValue = cells[offset + i * size + j];
+				int colValue = cells[offset + j * size + i];
+				int boxValue = cells[offset + (boxRow + j / cellSize) * size + boxCol + j % cellSize];
+				if(clashes(seenRow, rowValue, size) || clashes(seenCol, colValue, size)
+						|| clashes(seenBox, boxValue, size))
+					return false;
+				seenRow = see(seenRow, rowValue);
+				seenCol = see(seenCol, colValue);
+				seenBox = see(seenBox, boxValue);
+			}
 		}
 		return true;
 	}
 
-	private boolean checkDomain(int[] values) {
-		for(int i = 0; i < values.length; ++i) {
-			if(values[i] != nullInt) {
-				if(values[i] < 1 || values[i] > 9)
-					return false;
-			}
+	/**
+	 * Validates boardCount boards laid out one after another in cells, see 
+	 * {@link #isValid(byte[], int, int)}
+	 * @param cells
+	 * @param boardCount
+	 * @param size
+	 * @param valid receives the verdict for every board, may be null
+	 * @return the number of valid boards
+	 */
+	public static int validateAll(byte[] cells, int boardCount, int size, boolean[] valid) {
+		int nValid = 0;
+		int boardLength = size * size;
+		for(int b = 0; b < boardCount; ++b) {
+			boolean ok = isValid(cells, b * boardLength, size);
+			if(valid != null)
+				valid[b] = ok;
+			if(ok)
+				++nValid;
 		}
-		return true;
+		return nValid;
+	}
+
+	/**
+	 * Implements the feasibility check of an alldifferent constraint
+	 * one value at a time, see {@link #see(long, int)}
+	 * @param seen bit (v-1) is set iff v was seen in the unit before
+	 * @param value
+	 * @param size
+	 * @return true if the value is out of domain or was seen before
+	 */
+	private static boolean clashes(long seen, int value, int size) {
+		if(value == -1)
+			return false;
+		return value < 1 || value > size || (seen & 1L << (value - 1)) != 0;
+	}
+
+	/**
+	 * @return seen with value added, empty cells leave it unchanged
+	 */
+	private static long see(long seen, int value) {
+		return value == -1 ? seen : seen | 1L << (value - 1);
 	}
 
 }
@@ -0,0 +1,275 @@
+package isse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates puzzles with a unique solution and grades them
+ *
+ * A random full grid comes from the constraint solver with random
+ * branching cells and values. Then the givens are taken out one by one in
+ * random order. A given stays out if the puzzle keeps its unique solution.
+ * The check does not count solutions: the puzzle had exactly one before,
+ * so it is still unique iff there is no solution with another value in the
+ * emptied cell. That is a single search on the domains with the old value
+ * removed, and propagation alone mostly settles it. The checks share one
+ * {@link DomainStore} that is only assigned and rolled back, see
+ * {@link #removeClues(Sudoku, DomainStore, int[], int, int)}.
+ *
+ * The grade is the weakest {@link Difficulty} whose rules solve the puzzle
+ * without a single branch, read from the recursive calls the
+ * {@link StatisticsObject} of the grading solve counted
+ *
+ * A generator is not thread-safe;
+ * {@link #generateAll(int, long, int, int)} runs one per thread
+ *
+ */
+public class SudokuGenerator {
+	private final int size;
+	private final Random random;
+	private final StatisticsObject stats;
+	private final ConstraintSolver filler;
+	private final ConstraintSolver checker;
+	private final ConstraintSolver grader;
+	private final StatisticsObject gradingStats = new StatisticsObject();
+
+	/**
+	 * @param size number of rows of the puzzles
+	 * @param seed the same seed gives the same puzzles
+	 */
+	public SudokuGenerator(int size, long seed) {
+		this(size, seed, new StatisticsObject());
+	}
+
+	/**
+	 * @param size
+	 * @param seed
+	 * @param stats receives the counters of filling grids and checking
+	 *        uniqueness
+	 */
+	public SudokuGenerator(int size, long seed, StatisticsObject stats) {
+		BoardLayout.of(size);
+		this.size = size;
+		this.random = new Random(seed);
+		this.stats = stats;
+		filler = new ConstraintSolver(stats);
+		filler.setVariableSelector(new MinDomainSelector(false, random));
+		filler.setValueOrdering((store, cell, untried) -> {
+			for (int skip = random.nextInt(Long.bitCount(untried)); skip > 0; --skip) {
+				untried &= untried - 1;
+			}
+			return Long.numberOfTrailingZeros(untried) + 1;
+		});
+		// an empty board has a heavy tail on the larger sizes
+		filler.setRestartPolicy(RestartPolicy.luby(100));
+		filler.setPropagationRules(Difficulty.EASY.getRules());
+		checker = new ConstraintSolver(stats);
+		// the checks are mostly settled by propagation; the subset and
+		// pointing rules cost more there than the searches they save
+		checker.setPropagationRules(Difficulty.EASY.getRules());
+		grader = new ConstraintSolver(gradingStats);
+	}
+
+	public StatisticsObject getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return a new random puzzle with a unique solution and its grade
+	 */
+	public GradedPuzzle generate() {
+		Sudoku solution = randomSolution();
+		Sudoku puzzle = removeClues(solution);
+		return grade(puzzle, solution);
+	}
+
+	/**
+	 * @return a random, completely filled board
+	 */
+	public Sudoku randomSolution() {
+		Sudoku start = new Sudoku(size);
+		for (int cell = 0; cell < size * size; ++cell) {
+			start.putEmpty(cell);
+		}
+		// the sub-fields on the diagonal share no unit, so filling them up
+		// front breaks no rule and leaves the solver less work; it need not
+		// leave a solution, though, e.g., on 4x4, then the solver starts over
+		int cellSize = start.getCellSize();
+		int[] values = new int[size];
+		Sudoku prefilled = new Sudoku(start);
+		for (int box = 0; box < cellSize; ++box) {
+			shuffle(values, size);
+			for (int k = 0; k < size; ++k) {
+				prefilled.put(box * cellSize + k / cellSize, box * cellSize + k % cellSize, values[k] + 1);
+			}
+		}
+		Sudoku solution = filler.solve(prefilled);
+		return solution != null ? solution : filler.solve(start);
+	}
+
+	/**
+	 * Fills values with a random permutation of 0 to n-1
+	 */
+	private void shuffle(int[] values, int n) {
+		for (int k = 0; k < n; ++k) {
+			values[k] = k;
+		}
+		for (int k = n - 1; k > 0; --k) {
+			int other = random.nextInt(k + 1);
+			int swap = values[k];
+			values[k] = values[other];
+			values[other] = swap;
+		}
+	}
+
+	/**
+	 * Empties cells of solution in random order as long as the solution
+	 * stays unique; no single given of the result can be taken out
+	 * @param solution a completely filled board
+	 * @return a puzzle whose only solution is solution
+	 */
+	public Sudoku removeClues(Sudoku solution) {
+		Sudoku puzzle = new Sudoku(solution);
+		int[] order = new int[size * size];
+		shuffle(order, order.length);
+		Sudoku empty = new Sudoku(size);
+		for (int cell = 0; cell < size * size; ++cell) {
+			empty.putEmpty(cell);
+		}
+		removeClues(puzzle, new DomainStore(empty, checker.getPropagationRules()), order, 0, order.length);
+		return puzzle;
+	}
+
+	/**
+	 * Decides the cells order[lo] to order[hi-1] one after the other
+	 *
+	 * The check of order[k] needs the givens kept among the cells before it
+	 * and all cells after it. Rebuilding that for every cell costs
+	 * quadratic time. Instead, the range is halved: the left half is
+	 * decided with the right half assigned, then the right half with the
+	 * kept cells of the left half assigned, so every cell is assigned
+	 * log(cells) times
+	 * @param store holds the kept givens before lo and all cells from hi on,
+	 *        propagated; it is back in that state on return
+	 */
+	private void removeClues(Sudoku puzzle, DomainStore store, int[] order, int lo, int hi) {
+		if (hi - lo == 1) {
+			int cell = order[lo];
+			int value = puzzle.get(cell);
+			puzzle.putEmpty(cell);
+			if (hasOtherSolution(puzzle, store, cell, value))
+				puzzle.put(cell, value);
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int mark = store.mark();
+		assignAll(puzzle, store, order, mid, hi);
+		removeClues(puzzle, store, order, lo, mid);
+		store.undo(mark);
+		assignAll(puzzle, store, order, lo, mid);
+		removeClues(puzzle, store, order, mid, hi);
+		store.undo(mark);
+	}
+
+	/**
+	 * Assigns the givens among order[lo] to order[hi-1] and propagates;
+	 * they are part of the solution, so this cannot fail
+	 */
+	private void assignAll(Sudoku puzzle, DomainStore store, int[] order, int lo, int hi) {
+		for (int k = lo; k < hi; ++k) {
+			int cell = order[k];
+			if (!puzzle.isUnassigned(cell))
+				store.assign(cell / size, cell % size, puzzle.get(cell));
+		}
+		store.propagate();
+	}
+
+	/**
+	 * @param store holds all givens of puzzle but cell
+	 * @return true if puzzle has a solution with something else than value
+	 *         in cell
+	 */
+	private boolean hasOtherSolution(Sudoku puzzle, DomainStore store, int cell, int value) {
+		int mark = store.mark();
+		store.removeDomain(cell / size, cell % size, value);
+		boolean found = store.propagate() && checker.solveFrom(puzzle, store, CancellationToken.NONE) != null;
+		store.undo(mark);
+		return found;
+	}
+
+	/**
+	 * @param puzzle with a unique solution
+	 * @return the weakest difficulty whose rules solve puzzle without
+	 *         search
+	 */
+	public Difficulty grade(Sudoku puzzle) {
+		return grade(puzzle, null).getDifficulty();
+	}
+
+	private GradedPuzzle grade(Sudoku puzzle, Sudoku solution) {
+		StatisticsSnapshot statistics = null;
+		for (Difficulty level : Difficulty.values()) {
+			if (level == Difficulty.EXPERT)
+				break;
+			grader.setPropagationRules(level.getRules());
+			StatisticsSnapshot before = gradingStats.snapshot();
+			Sudoku solved = grader.solve(puzzle);
+			statistics = gradingStats.snapshot().since(before);
+			if (solution == null)
+				solution = solved;
+			if (statistics.getRecursiveCalls() == 0)
+				return new GradedPuzzle(puzzle, solution, level, statistics);
+		}
+		// the last level runs all rules, its search effort grades the rest
+		return new GradedPuzzle(puzzle, solution, Difficulty.EXPERT, statistics);
+	}
+
+	/**
+	 * Generates count puzzles on threads workers, each with a generator of
+	 * its own seeded with seed + its number
+	 * @return the puzzles of the first worker first, then of the second, ...
+	 */
+	public static List<GradedPuzzle> generateAll(final int size, final long seed, final int count, int threads)
+			throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<GradedPuzzle>>> workers = new ArrayList<Future<List<GradedPuzzle>>>(threads);
+			for (int w = 0; w < threads; ++w) {
+				final int worker = w;
+				// the first count % threads workers make one puzzle more
+				final int share = count / threads + (w < count % threads ? 1 : 0);
+				workers.add(executor.submit(new Callable<List<GradedPuzzle>>() {
+					@Override
+					public List<GradedPuzzle> call() {
+						SudokuGenerator generator = new SudokuGenerator(size, seed + worker);
+						List<GradedPuzzle> puzzles = new ArrayList<GradedPuzzle>(share);
+						for (int k = 0; k < share; ++k) {
+							puzzles.add(generator.generate());
+						}
+						return puzzles;
+					}
+				}));
+			}
+			List<GradedPuzzle> puzzles = new ArrayList<GradedPuzzle>(count);
+			for (Future<List<GradedPuzzle>> worker : workers) {
+				puzzles.addAll(worker.get());
+			}
+			return puzzles;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
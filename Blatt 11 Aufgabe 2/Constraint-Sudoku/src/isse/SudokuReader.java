@@ -2,36 +2,82 @@ package isse;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
- * Reads Sudoku puzzles from a .sdk-File 
+ * Reads Sudoku puzzles from a .sdk-File
  * as used in http://www.sudocue.net/
+ *
+ * The board size is taken from the first line. Every line is either one
+ * character per cell, using {@link Sudoku#SYMBOLS} ('1'-'9', then 'A'-'Z',
+ * then 'a'-'z') and '.' or '0' for empty cells, or whitespace separated
+ * numbers for boards with more values than symbols. Blank lines and lines
+ * starting with '#' are skipped
  * @author alexander
  *
  */
 public class SudokuReader {
 
-	protected final int size = 9;
-	
 	public Sudoku readFromFile(File sdkFile) throws FileNotFoundException {
 		Scanner sc = new Scanner(sdkFile);
-		Sudoku sudoku = new Sudoku();
-		
-		int i = 0;
-		
+		List<String> lines = new ArrayList<String>();
 		while(sc.hasNextLine()) {
-			String line = sc.nextLine(); 
-			for(int j = 0; j < size; ++j) {
-				char c = line.charAt(j);
-				if(c == '.') {
-					sudoku.putEmpty(i,j);
-				} else 
-					sudoku.put(i,j, Character.getNumericValue(c));
-			}
-			++i;
+			String line = sc.nextLine().trim();
+			if(!line.isEmpty() && line.charAt(0) != '#')
+				lines.add(line);
 		}
 		sc.close();
+		if(lines.isEmpty())
+			throw new IllegalArgumentException("No puzzle in " + sdkFile);
+
+		boolean numeric = lines.get(0).split("\\s+").length > 1;
+		int size = numeric ? lines.get(0).split("\\s+").length : lines.get(0).length();
+		if(lines.size() != size)
+			throw new IllegalArgumentException(sdkFile + ": expected " + size + " rows, found " + lines.size());
+		Sudoku sudoku = new Sudoku(size);
+		for(int i = 0; i < size; ++i) {
+			if(numeric)
+				readNumbers(sudoku, i, lines.get(i));
+			else
+				readSymbols(sudoku, i, lines.get(i));
+		}
 		return sudoku;
 	}
+
+	private void readSymbols(Sudoku sudoku, int i, String line) {
+		int size = sudoku.getSize();
+		if(line.length() != size)
+			throw new IllegalArgumentException("Row " + (i + 1) + " has " + line.length() + " cells instead of " + size);
+		for(int j = 0; j < size; ++j) {
+			int value = Sudoku.symbolValue(line.charAt(j));
+			if(value < 0 || value > size)
+				throw new IllegalArgumentException("Unexpected symbol '" + line.charAt(j) + "' in row " + (i + 1));
+			if(value == 0)
+				sudoku.putEmpty(i, j);
+			else
+				sudoku.put(i, j, value);
+		}
+	}
+
+	private void readNumbers(Sudoku sudoku, int i, String line) {
+		int size = sudoku.getSize();
+		String[] tokens = line.split("\\s+");
+		if(tokens.length != size)
+			throw new IllegalArgumentException("Row " + (i + 1) + " has " + tokens.length + " cells instead of " + size);
+		for(int j = 0; j < size; ++j) {
+			if(tokens[j].equals("."))
+				sudoku.putEmpty(i, j);
+			else {
+				int value = Integer.parseInt(tokens[j]);
+				if(value < 0 || value > size)
+					throw new IllegalArgumentException("Value " + value + " out of range in row " + (i + 1));
+				if(value == 0)
+					sudoku.putEmpty(i, j);
+				else
+					sudoku.put(i, j, value);
+			}
+		}
+	}
 }
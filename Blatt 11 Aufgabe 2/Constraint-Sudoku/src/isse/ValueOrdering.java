@@ -0,0 +1,21 @@
+package isse;
+
+/**
+ * Chooses the order in which a search tries the values of the branching
+ * cell, see {@link ConstraintSolver#setValueOrdering(ValueOrdering)}
+ *
+ */
+public interface ValueOrdering {
+
+	/** the smallest value first */
+	public static final ValueOrdering ASCENDING = (store, cell, untried) -> Long.numberOfTrailingZeros(untried) + 1;
+
+	/**
+	 * @param store in the state of the branching point
+	 * @param cell index row*size + column of the branching cell
+	 * @param untried the values not tried yet as bitmask, bit (v-1) for
+	 *        value v; never empty
+	 * @return the value to try next, one of untried
+	 */
+	public abstract int nextValue(DomainStore store, int cell, long untried);
+}
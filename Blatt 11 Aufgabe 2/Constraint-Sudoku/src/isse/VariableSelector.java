@@ -0,0 +1,32 @@
+package isse;
+
+/**
+ * Chooses the cell a search branches on next, see
+ * {@link ConstraintSolver#setVariableSelector(VariableSelector)}
+ *
+ * Selectors may learn during a search; the parallel tasks of one solve share
+ * the selector of their solver
+ *
+ */
+public interface VariableSelector {
+
+	/**
+	 * @param store propagated and consistent
+	 * @return the index row*size + column of a cell with more than one value
+	 *         left, -1 if every cell is fixed
+	 */
+	public abstract int selectCell(DomainStore store);
+
+	/**
+	 * Called with the store of every new search before the first selection
+	 */
+	public default void start(DomainStore store) {
+	}
+
+	/**
+	 * Called whenever propagation ran into a contradiction, see
+	 * {@link DomainStore#getFailedUnit()}
+	 */
+	public default void failed(DomainStore store) {
+	}
+}
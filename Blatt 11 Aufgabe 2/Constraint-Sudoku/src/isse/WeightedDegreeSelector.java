@@ -0,0 +1,74 @@
+package isse;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * dom/wdeg: every unit starts with weight 1, and the unit in which a
+ * propagation fails gets one more; the search branches on the cell with the
+ * smallest ratio of domain size to the summed weight of its units, so it
+ * turns to the parts of the board that caused trouble before
+ *
+ * Weights live for one search; parallel tasks update them without
+ * synchronization, a lost increment only blurs the heuristic
+ *
+ */
+public class WeightedDegreeSelector implements VariableSelector {
+	private final Random random;
+	private int[] weights = new int[0];
+
+	public WeightedDegreeSelector() {
+		this(null);
+	}
+
+	/**
+	 * @param random picks uniformly among ties; null for the first one
+	 */
+	public WeightedDegreeSelector(Random random) {
+		this.random = random;
+	}
+
+	@Override
+	public void start(DomainStore store) {
+		if (weights.length != store.getUnitCount())
+			weights = new int[store.getUnitCount()];
+		Arrays.fill(weights, 1);
+	}
+
+	@Override
+	public void failed(DomainStore store) {
+		int unit = store.getFailedUnit();
+		if (unit >= 0 && unit < weights.length)
+			++weights[unit];
+	}
+
+	@Override
+	public int selectCell(DomainStore store) {
+		int nCells = store.size * store.size;
+		// best so far as the fraction bestSize / bestWeight
+		long bestSize = 1;
+		long bestWeight = 0;
+		int best = -1;
+		int ties = 0;
+		for (int cell = 0; cell < nCells; ++cell) {
+			int domainSize = Long.bitCount(store.domainOf(cell));
+			if (domainSize < 2)
+				continue;
+			long weight = 0;
+			for (int unit : store.unitsOf(cell)) {
+				weight += weights[unit];
+			}
+			long lhs = domainSize * bestWeight;
+			long rhs = bestSize * weight;
+			if (best == -1 || lhs < rhs) {
+				bestSize = domainSize;
+				bestWeight = weight;
+				best = cell;
+				ties = 1;
+			} else if (lhs == rhs && random != null && random.nextInt(++ties) == 0) {
+				best = cell;
+			}
+		}
+		return best;
+	}
+}
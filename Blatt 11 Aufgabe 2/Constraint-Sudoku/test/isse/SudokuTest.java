@@ -1,6 +1,16 @@
 package isse;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -60,7 +70,7 @@ public class SudokuTest {
 		Solver constraintSolver = new ConstraintSolver(newStats);
 		evaluateSolver(constraintSolver, easyProblem);
 		
-		Assert.assertTrue(newStats.recursiveCalls < stats.recursiveCalls);
+		Assert.assertTrue(newStats.getRecursiveCalls() < stats.getRecursiveCalls());
 		System.out.println("::::::::: END EASY PROBLEM ::::");
 	}
 
@@ -78,7 +88,7 @@ public class SudokuTest {
 		Solver constraintSolver = new ConstraintSolver(newStats);
 		evaluateSolver(constraintSolver, mediumProblem);
 
-		Assert.assertTrue(newStats.recursiveCalls < stats.recursiveCalls);
+		Assert.assertTrue(newStats.getRecursiveCalls() < stats.getRecursiveCalls());
 		System.out.println("::::::::: END MEDIUM PROBLEM ::");
 	}
 	
@@ -94,16 +104,585 @@ public class SudokuTest {
 		Solver constraintSolver = new ConstraintSolver(newStats);
 		evaluateSolver(constraintSolver, hardProblem);
 
-		Assert.assertTrue(newStats.recursiveCalls < stats.recursiveCalls);
+		Assert.assertTrue(newStats.getRecursiveCalls() < stats.getRecursiveCalls());
 		System.out.println("::::::::: END HARD PROBLEM ::::");
 	}
 	
+	@Test
+	public void testProblem4HardParallel() {
+		System.out.println("::::::::: HARD PROBLEM PARALLEL ::::::::");
+		ForkJoinPool pool = new ForkJoinPool();
+		Solver constraintSolver = new ConstraintSolver(stats, pool, 3);
+		evaluateSolver(constraintSolver, hardProblem);
+		pool.shutdown();
+		System.out.println("::::::::: END HARD PROBLEM PARALLEL ::::");
+	}
+	
+	@Test
+	public void testProblem5DancingLinks() {
+		System.out.println("::::::::: DANCING LINKS ::::::::");
+		Solver dlxSolver = new DancingLinksSolver(stats);
+		evaluateSolver(dlxSolver, easyProblem);
+		evaluateSolver(dlxSolver, mediumProblem);
+		evaluateSolver(dlxSolver, hardProblem);
+		System.out.println("::::::::: END DANCING LINKS ::::");
+	}
+	
+	@Test
+	public void testProblem6PropagationRules() {
+		System.out.println("::::::::: PROPAGATION RULES ::::::::");
+		ConstraintSolver singlesSolver = new ConstraintSolver(stats);
+		singlesSolver.setPropagationRules(
+				EnumSet.range(PropagationRule.HIDDEN_SINGLE_ROW, PropagationRule.HIDDEN_SINGLE_BOX));
+		evaluateSolver(singlesSolver, hardProblem);
+		StatisticsObject newStats = new StatisticsObject();
+		ConstraintSolver allRulesSolver = new ConstraintSolver(newStats);
+		allRulesSolver.setPropagationRules(EnumSet.allOf(PropagationRule.class));
+		evaluateSolver(allRulesSolver, hardProblem);
+
+		Assert.assertTrue(newStats.getRecursiveCalls() <= stats.getRecursiveCalls());
+		System.out.println("::::::::: END PROPAGATION RULES ::::");
+	}
+	
+	@Test
+	public void testProblem7LargeBoards() throws Exception {
+		System.out.println("::::::::: LARGE BOARDS ::::::::");
+		SudokuReader reader = new SudokuReader();
+		for (String file : new String[] { "data/Easy16.sdk", "data/Easy25.sdk" }) {
+			Sudoku problem = reader.readFromFile(new File(file));
+			System.out.println(problem.toString());
+			evaluateSolver(new ConstraintSolver(stats), problem);
+			evaluateSolver(new DancingLinksSolver(stats), problem);
+		}
+		System.out.println("::::::::: END LARGE BOARDS ::::");
+	}
+	
+	@Test
+	public void testProblem8Uniqueness() {
+		System.out.println("::::::::: UNIQUENESS ::::::::");
+		Assert.assertTrue(new BacktrackSolver(stats).hasUniqueSolution(easyProblem));
+		Assert.assertTrue(new ConstraintSolver(stats).hasUniqueSolution(hardProblem));
+		Assert.assertTrue(new DancingLinksSolver(stats).hasUniqueSolution(hardProblem));
+
+		// without its first row the hard problem has plenty of solutions
+		Sudoku openProblem = new Sudoku(hardProblem);
+		for (int j = 0; j < 9; ++j) {
+			openProblem.putEmpty(0, j);
+		}
+		Assert.assertEquals(2, new ConstraintSolver(stats).countSolutions(openProblem, 2));
+		Assert.assertEquals(50, new DancingLinksSolver(stats).countSolutions(openProblem, 50));
+		System.out.println(stats.toString());
+		System.out.println("::::::::: END UNIQUENESS ::::");
+	}
+	
+	@Test
+	public void testProblem9SolutionStream() {
+		System.out.println("::::::::: SOLUTION STREAM ::::::::");
+		ConstraintSolver solver = new ConstraintSolver(stats);
+		Sudoku solution = solver.solve(hardProblem);
+		// open up the first band of the solved board
+		Sudoku openProblem = new Sudoku(solution);
+		for (int i = 0; i < 3; ++i) {
+			for (int j = 0; j < 9; ++j) {
+				openProblem.putEmpty(i, j);
+			}
+		}
+		int count = solver.countSolutions(openProblem, Integer.MAX_VALUE);
+		Assert.assertEquals(count, solver.solutions(openProblem).count());
+		Assert.assertEquals(count, solver.solutions(openProblem).parallel().map(Sudoku::toString).distinct().count());
+		Assert.assertEquals(3, solver.solutions(openProblem).limit(3).count());
+		Assert.assertTrue(solver.solutions(openProblem).allMatch(s -> s.isSolution(openProblem)));
+		Assert.assertEquals(1, solver.solutions(hardProblem).count());
+		// the stream follows the value ordering like solve does
+		String ascending = solver.solutions(openProblem).findFirst().get().toString();
+		solver.setValueOrdering((store, cell, untried) -> 64 - Long.numberOfLeadingZeros(untried));
+		String descending = solver.solutions(openProblem).findFirst().get().toString();
+		Assert.assertEquals(solver.solve(openProblem).toString(), descending);
+		Assert.assertFalse(ascending.equals(descending));
+		Assert.assertEquals(count, solver.solutions(openProblem).count());
+		System.out.println(count + " solutions");
+		System.out.println("::::::::: END SOLUTION STREAM ::::");
+	}
+	
+	@Test
+	public void testProblem10SolutionCache() {
+		System.out.println("::::::::: SOLUTION CACHE ::::::::");
+		CachingSolver solver = new CachingSolver(new ConstraintSolver(stats), 10);
+		Assert.assertTrue(solver.solve(hardProblem).isSolution(hardProblem));
+		// transposed and relabeled, with the first two bands swapped
+		Sudoku variant = new Sudoku();
+		for (int i = 0; i < 9; ++i) {
+			for (int j = 0; j < 9; ++j) {
+				int row = j < 6 ? (j + 3) % 6 : j;
+				if (hardProblem.isUnassigned(row, i))
+					variant.putEmpty(i, j);
+				else
+					variant.put(i, j, 10 - hardProblem.get(row, i));
+			}
+		}
+		Sudoku solution = solver.solve(variant);
+		Assert.assertTrue(solution.isSolution(variant));
+		Assert.assertEquals(1, solver.getCache().getHits());
+		// hits count as solves on both paths, the token path with empty counters
+		long solves = solver.getStats().snapshot().getSolves();
+		solver.solve(variant);
+		SolveResult result = solver.solve(variant, CancellationToken.NONE);
+		Assert.assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+		Assert.assertEquals(0, result.getStatistics().getSolves());
+		Assert.assertEquals(solves + 2, solver.getStats().snapshot().getSolves());
+		System.out.println(solution);
+		System.out.println("::::::::: END SOLUTION CACHE ::::");
+	}
+	
+	@Test
+	public void testProblem11Timeout() throws Exception {
+		System.out.println("::::::::: TIMEOUT ::::::::");
+		// far too many branches for plain backtracking
+		Sudoku large = new SudokuReader().readFromFile(new File("data/Easy16.sdk"));
+		long start = System.nanoTime();
+		SolveResult result = new BacktrackSolver(stats).solve(large, 50, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(SolveResult.Status.TIMED_OUT, result.getStatus());
+		Assert.assertNull(result.getSolution());
+		Assert.assertTrue(result.getStatistics().getRecursiveCalls() > 0);
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		result = new ConstraintSolver(stats).solve(hardProblem, 1, TimeUnit.MINUTES);
+		Assert.assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+		Assert.assertTrue(result.getSolution().isSolution(hardProblem));
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		Assert.assertEquals(SolveResult.Status.TIMED_OUT, new DancingLinksSolver(stats).solve(hardProblem, token).getStatus());
+
+		// refuted without a search, the cancelled token cannot have cut it off
+		Sudoku clash = new Sudoku(hardProblem);
+		int given = 0;
+		while (clash.isUnassigned(given)) {
+			++given;
+		}
+		int free = given - given % 9;
+		while (!clash.isUnassigned(free)) {
+			++free;
+		}
+		clash.put(free, clash.get(given));
+		Solver[] solvers = { new BacktrackSolver(stats), new ConstraintSolver(stats), new DancingLinksSolver(stats),
+				new SatSolver(stats) };
+		for (Solver solver : solvers) {
+			Assert.assertEquals(SolveResult.Status.UNSATISFIABLE, solver.solve(clash, token).getStatus());
+		}
+		Assert.assertEquals(SolveResult.Status.UNSATISFIABLE,
+				new SolvingSession(clash).solve(token).getStatus());
+		System.out.println(result);
+		System.out.println("::::::::: END TIMEOUT ::::");
+	}
+	
+	@Test
+	public void testProblem12Portfolio() throws Exception {
+		System.out.println("::::::::: PORTFOLIO ::::::::");
+		List<SolverFactory> engines = new ArrayList<SolverFactory>();
+		engines.add(BacktrackSolver::new);
+		engines.add(ConstraintSolver::new);
+		engines.add(DancingLinksSolver::new);
+		PortfolioSolver solver = new PortfolioSolver(stats, engines);
+		Sudoku large = new SudokuReader().readFromFile(new File("data/Easy16.sdk"));
+		evaluateSolver(solver, hardProblem);
+		evaluateSolver(solver, large);
+		// backtracking cannot have won on the 16x16 board
+		Assert.assertEquals(2, solver.getWins(0) + solver.getWins(1) + solver.getWins(2));
+		Assert.assertTrue(solver.getWins(1) + solver.getWins(2) >= 1);
+		solver.shutdown();
+		System.out.println("::::::::: END PORTFOLIO ::::");
+	}
+	
+	@Test
+	public void testProblem13Heuristics() {
+		System.out.println("::::::::: HEURISTICS ::::::::");
+		VariableSelector[] selectors = { new MinDomainSelector(), new MinDomainSelector(true, null),
+				new MinDomainSelector(true, new Random(42)), new WeightedDegreeSelector(new Random(42)) };
+		ValueOrdering[] orderings = { ValueOrdering.ASCENDING, new LeastConstrainingValue(new Random(42)) };
+		for (VariableSelector selector : selectors) {
+			for (ValueOrdering ordering : orderings) {
+				ConstraintSolver solver = new ConstraintSolver(new StatisticsObject());
+				solver.setVariableSelector(selector);
+				solver.setValueOrdering(ordering);
+				Assert.assertTrue(solver.solve(hardProblem).isSolution(hardProblem));
+				Assert.assertTrue(solver.hasUniqueSolution(hardProblem));
+				System.out.println(selector.getClass().getSimpleName() + ": " + solver.getStats().getRecursiveCalls() + " recursive calls");
+			}
+		}
+		System.out.println("::::::::: END HEURISTICS ::::");
+	}
+	
+	@Test
+	public void testProblem14Restarts() {
+		System.out.println("::::::::: RESTARTS ::::::::");
+		ConstraintSolver solver = new ConstraintSolver(new StatisticsObject());
+		solver.setVariableSelector(new MinDomainSelector(false, new Random(42)));
+		// tiny budgets force restarts on the hard problem
+		solver.setRestartPolicy(RestartPolicy.luby(1));
+		Sudoku solution = solver.solve(hardProblem);
+		Assert.assertTrue(solution.isSolution(hardProblem));
+		Assert.assertTrue(solver.getStats().getRestarts() > 0);
+
+		// a wrong value in the first empty cell; restarts must not lose completeness
+		Sudoku wrongProblem = new Sudoku(hardProblem);
+		for (int j = 0; j < 9; ++j) {
+			if (hardProblem.isUnassigned(0, j)) {
+				wrongProblem.put(0, j, solution.get(0, j) % 9 + 1);
+				break;
+			}
+		}
+		Assert.assertNull(solver.solve(wrongProblem));
+		Assert.assertNull(new ConstraintSolver(stats).solve(wrongProblem));
+		System.out.println(solver.getStats());
+		System.out.println("::::::::: END RESTARTS ::::");
+	}
+
+	@Test
+	public void testProblem14RestartsParallel() {
+		System.out.println("::::::::: RESTARTS PARALLEL ::::::::");
+		ForkJoinPool pool = new ForkJoinPool();
+		ConstraintSolver solver = new ConstraintSolver(stats, pool, 3);
+		// parallel solves ignore the policy
+		solver.setRestartPolicy(RestartPolicy.luby(100));
+		SolveResult result = solver.solve(hardProblem, CancellationToken.NONE);
+		pool.shutdown();
+		Assert.assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+		Assert.assertTrue(result.getSolution().isSolution(hardProblem));
+		Assert.assertEquals(0, stats.getRestarts());
+		System.out.println("::::::::: END RESTARTS PARALLEL ::::");
+	}
+	
+	@Test
+	public void testProblem15PackedFormat() throws Exception {
+		System.out.println("::::::::: PACKED FORMAT ::::::::");
+		Sudoku solution = new ConstraintSolver(stats).solve(hardProblem);
+		PackedBoard packed = PackedBoard.of(hardProblem);
+		Assert.assertEquals(41, PackedBoard.recordBytes(9));
+		for (int i = 0; i < 9; ++i) {
+			for (int j = 0; j < 9; ++j) {
+				Assert.assertEquals(hardProblem.get(i, j), packed.get(i, j));
+			}
+		}
+		// the solver reads the packed board without inflating it
+		DomainStore store = new DomainStore(packed, PropagationRule.DEFAULT);
+		DomainStore expected = new DomainStore(hardProblem);
+		Assert.assertTrue(store.isConsistent());
+		for (int i = 0; i < 9; ++i) {
+			for (int j = 0; j < 9; ++j) {
+				Assert.assertEquals(expected.getDomainMask(i, j), store.getDomainMask(i, j));
+			}
+		}
+
+		Sudoku large = new SudokuReader().readFromFile(new File("data/Easy25.sdk"));
+		Assert.assertEquals(PackedBoard.of(large).toSudoku().toString(), large.toString());
+
+		File file = File.createTempFile("puzzles", ".sdkp");
+		try {
+			PackedSudokuWriter writer = new PackedSudokuWriter(file, 9, true);
+			writer.write(easyProblem, new ConstraintSolver(stats).solve(easyProblem));
+			writer.write(hardProblem, solution);
+			writer.close();
+			Assert.assertEquals(PackedSudokuFile.HEADER_BYTES + 2 * 2 * 41, file.length());
+			PackedSudokuFile packedFile = new PackedSudokuFile(file);
+			Assert.assertEquals(2, packedFile.count());
+			Assert.assertEquals(packed, packedFile.puzzle(1));
+			Assert.assertTrue(packedFile.solution(1).toSudoku().isSolution(hardProblem));
+			Assert.assertTrue(packedFile.solution(0).toSudoku().isSolution(easyProblem));
+			packedFile.close();
+		} finally {
+			file.delete();
+		}
+		System.out.println("::::::::: END PACKED FORMAT ::::");
+	}
+	
+	@Test
+	public void testProblem16SolvingSession() {
+		System.out.println("::::::::: SOLVING SESSION ::::::::");
+		Sudoku solution = new ConstraintSolver(stats).solve(hardProblem);
+		SolvingSession session = new SolvingSession(hardProblem);
+		Assert.assertTrue(session.isSolvable());
+		int first = -1;
+		int second = -1;
+		for (int cell = 0; cell < 81 && second == -1; ++cell) {
+			if (hardProblem.isUnassigned(cell)) {
+				if (first == -1)
+					first = cell;
+				else
+					second = cell;
+			}
+		}
+		// the right value keeps the last solution
+		session.assign(first / 9, first % 9, solution.get(first));
+		Assert.assertEquals(1L << (solution.get(first) - 1), session.getCandidates(first / 9, first % 9));
+		Assert.assertTrue(session.isSolvable());
+		Assert.assertEquals(1, session.getReusedSolutions());
+
+		// a wrong value makes the puzzle unsolvable until it is retracted
+		int wrong = solution.get(second) % 9 + 1;
+		session.assign(second / 9, second % 9, wrong);
+		Assert.assertFalse(session.isSolvable());
+		Assert.assertFalse(session.isSolvable());
+		// retracting the older edit replays the wrong one
+		Assert.assertTrue(session.retract(first / 9, first % 9));
+		Assert.assertFalse(session.isSolvable());
+		Assert.assertTrue(session.retract(second / 9, second % 9));
+		Assert.assertFalse(session.retract(second / 9, second % 9));
+		Assert.assertTrue(session.isSolvable());
+		Assert.assertTrue(session.solve(CancellationToken.NONE).getSolution().isSolution(hardProblem));
+		Assert.assertEquals(hardProblem.toString(), session.getBoard().toString());
+
+		int given = 0;
+		while (hardProblem.isUnassigned(given)) {
+			++given;
+		}
+		try {
+			session.assign(given / 9, given % 9, 1);
+			Assert.fail("givens cannot be edited");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		System.out.println("::::::::: END SOLVING SESSION ::::");
+	}
+
+	@Test
+	public void testProblem17Generator() throws Exception {
+		System.out.println("::::::::: GENERATOR ::::");
+		SudokuGenerator generator = new SudokuGenerator(9, 17);
+		ConstraintSolver counter = new ConstraintSolver(stats);
+		for (int k = 0; k < 5; ++k) {
+			GradedPuzzle graded = generator.generate();
+			Sudoku puzzle = graded.getPuzzle();
+			Assert.assertEquals(1, counter.countSolutions(puzzle, 2));
+			Assert.assertTrue(graded.getSolution().isSolution(puzzle));
+			Assert.assertEquals(graded.getDifficulty(), generator.grade(puzzle));
+			// minimal: every given is needed for uniqueness
+			for (int cell = 0; cell < 81; ++cell) {
+				if (puzzle.isUnassigned(cell))
+					continue;
+				Sudoku fewer = new Sudoku(puzzle);
+				fewer.putEmpty(cell);
+				Assert.assertEquals(2, counter.countSolutions(fewer, 2));
+			}
+			System.out.println(graded);
+		}
+		// the same seed gives the same puzzle
+		Assert.assertEquals(new SudokuGenerator(9, 3).generate().getPuzzle().toString(),
+				new SudokuGenerator(9, 3).generate().getPuzzle().toString());
+
+		// hidden singles get stuck once, a pointing pair helps on
+		Assert.assertEquals(Difficulty.MEDIUM, generator.grade(easyProblem));
+		StatisticsSnapshot graded = generator.generate().getStatistics();
+		Assert.assertTrue(graded.getRuleHits(PropagationRule.HIDDEN_SINGLE_BOX) > 0);
+
+		List<GradedPuzzle> batch = SudokuGenerator.generateAll(9, 1, 7, 2);
+		Assert.assertEquals(7, batch.size());
+		for (GradedPuzzle p : batch) {
+			Assert.assertTrue(p.getSolution().isSolution(p.getPuzzle()));
+		}
+		System.out.println("::::::::: END GENERATOR ::::");
+	}
+
+	@Test
+	public void testProblem17GeneratorSizes() {
+		System.out.println("::::::::: GENERATOR SIZES ::::");
+		ConstraintSolver counter = new ConstraintSolver(stats);
+		// on 4x4 many random diagonal fills leave no solution
+		for (int size : new int[] { 4, 9 }) {
+			for (long seed = 0; seed < (size == 4 ? 50 : 5); ++seed) {
+				SudokuGenerator generator = new SudokuGenerator(size, seed);
+				GradedPuzzle graded = generator.generate();
+				Sudoku puzzle = graded.getPuzzle();
+				Assert.assertEquals(size, puzzle.getSize());
+				Assert.assertEquals(1, counter.countSolutions(puzzle, 2));
+				Assert.assertTrue(graded.getSolution().isSolution(puzzle));
+				Assert.assertEquals(graded.getDifficulty(), generator.grade(puzzle));
+			}
+		}
+		System.out.println("::::::::: END GENERATOR SIZES ::::");
+	}
+
+	@Test
+	public void testProblem18SatSolver() throws Exception {
+		System.out.println("::::::::: SAT SOLVER ::::");
+		SatSolver solver = new SatSolver(stats);
+		evaluateSolver(solver, easyProblem);
+		evaluateSolver(solver, mediumProblem);
+		evaluateSolver(solver, hardProblem);
+		SudokuReader reader = new SudokuReader();
+		evaluateSolver(solver, reader.readFromFile(new File("data/Easy25.sdk")));
+		Assert.assertTrue(stats.getRecursiveCalls() > 0);
+		Assert.assertTrue(stats.getBacktracks() > 0);
+
+		Assert.assertTrue(solver.hasUniqueSolution(hardProblem));
+		Sudoku openProblem = new Sudoku(hardProblem);
+		for (int j = 0; j < 9; ++j) {
+			openProblem.putEmpty(0, j);
+		}
+		Assert.assertEquals(50, solver.countSolutions(openProblem, 50));
+
+		// the only solution has this value right next to the cell
+		Sudoku wrong = new Sudoku(hardProblem);
+		int free = 0;
+		while (!wrong.isUnassigned(free)) {
+			++free;
+		}
+		wrong.put(free, solver.solve(hardProblem).get(free % 9 == 0 ? free + 1 : free - 1));
+		Assert.assertNull(solver.solve(wrong));
+
+		CancellationToken cancelled = new CancellationToken();
+		cancelled.cancel();
+		Assert.assertEquals(SolveResult.Status.TIMED_OUT, solver.solve(openProblem, cancelled).getStatus());
+		System.out.println("::::::::: END SAT SOLVER ::::");
+	}
+
+	@Test
+	public void testProblem19BatchSolver() throws Exception {
+		System.out.println("::::::::: BATCH SOLVER ::::");
+		File[] files = new File("Pack1").listFiles();
+		Arrays.sort(files);
+		final List<Sudoku> puzzles = new ArrayList<Sudoku>();
+		SudokuReader reader = new SudokuReader();
+		for (File file : files) {
+			if (file.getName().endsWith(".sdk"))
+				puzzles.add(reader.readFromFile(file));
+		}
+		BatchSolver solver = new BatchSolver(new SolverFactory() {
+			@Override
+			public Solver createSolver(StatisticsObject stats) {
+				return new ConstraintSolver(stats);
+			}
+		}, 3);
+
+		final List<Integer> order = new ArrayList<Integer>();
+		BatchReport report = solver.solveDirectory(new File("Pack1"), true, (index, puzzle, solution) -> {
+			order.add(index);
+			Assert.assertEquals(puzzles.get(index).toString(), puzzle.toString());
+			Assert.assertTrue(solution.isSolution(puzzle));
+		});
+		Assert.assertEquals(puzzles.size(), report.getPuzzles());
+		Assert.assertEquals(puzzles.size(), report.getSolved());
+		for (int k = 0; k < order.size(); ++k) {
+			Assert.assertEquals(k, (int) order.get(k));
+		}
+
+		// out of order every puzzle still comes exactly once
+		final boolean[] delivered = new boolean[puzzles.size()];
+		report = solver.solveAll(puzzles.iterator(), false, (index, puzzle, solution) -> {
+			Assert.assertFalse(delivered[index]);
+			delivered[index] = true;
+			Assert.assertTrue(solution.isSolution(puzzles.get(index)));
+		});
+		Assert.assertEquals(puzzles.size(), report.getSolved());
+		for (boolean d : delivered) {
+			Assert.assertTrue(d);
+		}
+		System.out.println(report);
+		System.out.println("::::::::: END BATCH SOLVER ::::");
+	}
+
+	private static String oneLine(Sudoku sudoku) {
+		StringBuilder line = new StringBuilder();
+		for (int cell = 0; cell < 81; ++cell) {
+			line.append(sudoku.isUnassigned(cell) ? '.' : (char) ('0' + sudoku.get(cell)));
+		}
+		return line.toString();
+	}
+
+	@Test
+	public void testProblem20MappedReader() throws Exception {
+		System.out.println("::::::::: MAPPED READER ::::");
+		StringBuilder content = new StringBuilder("# a comment longer than a window: ");
+		for (int k = 0; k < 10000; ++k) {
+			content.append('x');
+		}
+		content.append('\n').append(oneLine(easyProblem)).append('\n');
+		for (int k = 0; k < 10000; ++k) {
+			content.append(k % 2 == 0 ? '\n' : ' ');
+		}
+		content.append(new String(Files.readAllBytes(new File("data/Hard08.sdk").toPath()), "US-ASCII"));
+		content.append("\n# last one\n").append(oneLine(mediumProblem)).append("\r\n\n");
+
+		File file = File.createTempFile("puzzles", ".txt");
+		try {
+			Files.write(file.toPath(), content.toString().getBytes("US-ASCII"));
+			List<String> expected = Arrays.asList(easyProblem.toString(), hardProblem.toString(),
+					mediumProblem.toString());
+			// the smallest window, so the comment and the blanks span several
+			MappedSudokuReader reader = new MappedSudokuReader(file, 9, 1);
+			List<String> read = new ArrayList<String>();
+			while (reader.hasNext()) {
+				read.add(reader.next().toString());
+			}
+			reader.close();
+			Assert.assertEquals(expected, read);
+
+			try (Stream<Sudoku> puzzles = new MappedSudokuReader(file).stream()) {
+				Assert.assertEquals(expected, puzzles.map(Sudoku::toString).collect(Collectors.toList()));
+			}
+			// a window beyond what one buffer can map is cut down
+			try (Stream<Sudoku> puzzles = new MappedSudokuReader(file, 9, Long.MAX_VALUE).stream()) {
+				Assert.assertEquals(3, puzzles.count());
+			}
+			try {
+				new MappedSudokuReader(file, 10).close();
+				Assert.fail("10 is no square");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+
+			Files.write(file.toPath(), oneLine(easyProblem).substring(0, 40).getBytes("US-ASCII"));
+			try {
+				new MappedSudokuReader(file).close();
+				Assert.fail("the puzzle is cut off");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+		System.out.println("::::::::: END MAPPED READER ::::");
+	}
+
+	@Test
+	public void testProblem21Validation() {
+		System.out.println("::::::::: VALIDATION ::::");
+		Sudoku solution = new ConstraintSolver(stats).solve(hardProblem);
+		Sudoku columnClash = new Sudoku(solution);
+		// swapping two cells of a row keeps row and box, but breaks both columns
+		columnClash.put(0, 0, solution.get(0, 1));
+		columnClash.put(0, 1, solution.get(0, 0));
+		Sudoku outOfRange = new Sudoku(hardProblem);
+		outOfRange.put(0, 0, 10);
+		Sudoku boxClash = new Sudoku(9);
+		for (int cell = 0; cell < 81; ++cell) {
+			boxClash.putEmpty(cell);
+		}
+		boxClash.put(0, 0, 5);
+		boxClash.put(1, 1, 5);
+
+		Sudoku[] boards = { solution, hardProblem, columnClash, outOfRange, boxClash };
+		boolean[] expected = { true, true, false, false, false };
+		byte[] cells = new byte[boards.length * 81];
+		for (int b = 0; b < boards.length; ++b) {
+			System.arraycopy(boards[b].cells, 0, cells, b * 81, 81);
+			Assert.assertEquals(expected[b], boards[b].isValid());
+			Assert.assertEquals(expected[b], Sudoku.isValid(cells, b * 81, 9));
+		}
+		boolean[] valid = new boolean[boards.length];
+		Assert.assertEquals(2, Sudoku.validateAll(cells, boards.length, 9, valid));
+		for (int b = 0; b < boards.length; ++b) {
+			Assert.assertEquals(expected[b], valid[b]);
+		}
+		Assert.assertEquals(2, Sudoku.validateAll(cells, boards.length, 9, null));
+		System.out.println("::::::::: END VALIDATION ::::");
+	}
+	
 	@Test
 	public void testAllEasySudokus() throws Exception{
 		System.out.println(":::: TestStarting ::::");
 		System.out.println("Solving all easy sudokus!");
-		int sumRecCallsForBackTrackingSolver = 0;
-		int sumRecCallsForConstraintSolver = 0;
+		long sumRecCallsForBackTrackingSolver = 0;
+		long sumRecCallsForConstraintSolver = 0;
 		
 		SudokuReader reader = new SudokuReader();
 		String relativePath = "Pack1/Easy";
@@ -128,8 +707,8 @@ public class SudokuTest {
 			evaluateSolver(backTrackingSolver, currentSudoku);
 			System.out.println("Using Constraint Algorithm");
 			evaluateSolver(constraintSolver, currentSudoku);
-			sumRecCallsForBackTrackingSolver += backTrackingStats.recursiveCalls;
-			sumRecCallsForConstraintSolver += constraintsStats.recursiveCalls;
+			sumRecCallsForBackTrackingSolver += backTrackingStats.getRecursiveCalls();
+			sumRecCallsForConstraintSolver += constraintsStats.getRecursiveCalls();
 		}
 		
 		Assert.assertTrue(sumRecCallsForConstraintSolver < sumRecCallsForBackTrackingSolver);
@@ -143,8 +722,8 @@ public class SudokuTest {
 	public void testAllMediumSudokus() throws Exception{
 		System.out.println(":::: TestStarting ::::");
 		System.out.println("Solving all medium sudokus!");
-		int sumRecCallsForBackTrackingSolver = 0;
-		int sumRecCallsForConstraintSolver = 0;
+		long sumRecCallsForBackTrackingSolver = 0;
+		long sumRecCallsForConstraintSolver = 0;
 		
 		SudokuReader reader = new SudokuReader();
 		String relativePath = "Pack1/Medium";
@@ -169,8 +748,8 @@ public class SudokuTest {
 			evaluateSolver(backTrackingSolver, currentSudoku);
 			System.out.println("Using Constraint Algorithm");
 			evaluateSolver(constraintSolver, currentSudoku);
-			sumRecCallsForBackTrackingSolver += backTrackingStats.recursiveCalls;
-			sumRecCallsForConstraintSolver += constraintsStats.recursiveCalls;
+			sumRecCallsForBackTrackingSolver += backTrackingStats.getRecursiveCalls();
+			sumRecCallsForConstraintSolver += constraintsStats.getRecursiveCalls();
 		}
 		
 		Assert.assertTrue(sumRecCallsForConstraintSolver < sumRecCallsForBackTrackingSolver);
@@ -184,8 +763,8 @@ public class SudokuTest {
 	public void testAllHardSudokus() throws Exception{
 		System.out.println(":::: TestStarting ::::");
 		System.out.println("Solving all hard sudokus!");
-		int sumRecCallsForBackTrackingSolver = 0;
-		int sumRecCallsForConstraintSolver = 0;
+		long sumRecCallsForBackTrackingSolver = 0;
+		long sumRecCallsForConstraintSolver = 0;
 		
 		SudokuReader reader = new SudokuReader();
 		String relativePath = "Pack1/Hard";
@@ -210,8 +789,8 @@ public class SudokuTest {
 			evaluateSolver(backTrackingSolver, currentSudoku);
 			System.out.println("Using Constraint Algorithm");
 			evaluateSolver(constraintSolver, currentSudoku);
-			sumRecCallsForBackTrackingSolver += backTrackingStats.recursiveCalls;
-			sumRecCallsForConstraintSolver += constraintsStats.recursiveCalls;
+			sumRecCallsForBackTrackingSolver += backTrackingStats.getRecursiveCalls();
+			sumRecCallsForConstraintSolver += constraintsStats.getRecursiveCalls();
 		}
 		
 		Assert.assertTrue(sumRecCallsForConstraintSolver < sumRecCallsForBackTrackingSolver);